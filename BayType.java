@@ -0,0 +1,29 @@
+// Kind of bay a lot zone is built as; decides which vehicle types may use its spots
+public enum BayType {
+    STANDARD("standard"),
+    MOTORCYCLE("motorcycle"),
+    TRUCK("truck"),
+    EV("ev"),
+    DISABLED("disabled");
+    
+    private static final BayType[] VALUES = values();
+    
+    private final String keyword;
+    
+    BayType(String keyword) {
+        this.keyword = keyword;
+    }
+    
+    // Name used in layout files
+    public String getKeyword() { return keyword; }
+    
+    // Returns null for an unknown keyword
+    public static BayType fromKeyword(String keyword) {
+        for (BayType bayType : VALUES) {
+            if (bayType.keyword.equalsIgnoreCase(keyword)) {
+                return bayType;
+            }
+        }
+        return null;
+    }
+}
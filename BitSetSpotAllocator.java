@@ -0,0 +1,67 @@
+import java.util.BitSet;
+
+/**
+ * Simple allocator over a BitSet of taken ranks, using nextClearBit to find
+ * the best-ranked free spot. Fine for a single gate or low contention;
+ * ParkingBenchmark's find-spot-bitset runs it against LockFreeSpotAllocator.
+ */
+public class BitSetSpotAllocator implements SpotAllocator {
+    private final int[] rankToSpot;
+    private final int[] spotToRank;
+    private final BitSet taken;
+    private int freeCount;
+    
+    public BitSetSpotAllocator(int capacity) {
+        this(SpotOrder.identity(capacity));
+    }
+    
+    // entranceOrder lists spot indices from most to least preferred
+    public BitSetSpotAllocator(int[] entranceOrder) {
+        rankToSpot = entranceOrder.clone();
+        spotToRank = SpotOrder.invert(rankToSpot);
+        taken = new BitSet(rankToSpot.length);
+        freeCount = rankToSpot.length;
+    }
+    
+    @Override
+    public synchronized int acquire() {
+        int rank = taken.nextClearBit(0);
+        if (rank >= rankToSpot.length) {
+            return -1;
+        }
+        taken.set(rank);
+        freeCount--;
+        return rankToSpot[rank];
+    }
+    
+    @Override
+    public synchronized boolean claim(int spotIndex) {
+        int rank = spotToRank[spotIndex];
+        if (taken.get(rank)) {
+            return false;
+        }
+        taken.set(rank);
+        freeCount--;
+        return true;
+    }
+    
+    @Override
+    public synchronized void release(int spotIndex) {
+        int rank = spotToRank[spotIndex];
+        if (!taken.get(rank)) {
+            throw new IllegalStateException("Spot index " + spotIndex + " is not allocated");
+        }
+        taken.clear(rank);
+        freeCount++;
+    }
+    
+    @Override
+    public synchronized int freeCount() {
+        return freeCount;
+    }
+    
+    @Override
+    public int capacity() {
+        return rankToSpot.length;
+    }
+}
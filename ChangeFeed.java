@@ -0,0 +1,252 @@
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process feed of every park and remove, for parts that want to follow
+ * the lot without being called from the engine's lanes: the spot map, display
+ * boards on the gate service, anything added later.
+ *
+ * Changes go into a pre-allocated ring of slots, in the style of the LMAX
+ * Disruptor. A writer claims the next sequence with one atomic increment,
+ * fills the slot and stamps it with the sequence, which is the barrier: a
+ * subscriber reads on while the next slot carries the sequence it expects.
+ * Each subscriber has its own thread and position and gets the changes in
+ * batches, with the end of each batch flagged so it can do its work once.
+ *
+ * Writers never wait for subscribers. One that falls a whole ring behind has
+ * its unread slots overwritten; it notices from the stamps, skips to the
+ * newest change and is told how many it missed, and should then reread what
+ * it needs from the engine. That is why the journal and metrics are not fed
+ * from here: they must see every change.
+ */
+public class ChangeFeed {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private static final long WRITING = Long.MIN_VALUE; // Stamp while a writer fills the slot
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 1_000_000; // Idle subscribers check about once a millisecond
+    
+    // Outcomes of reading a slot
+    private static final int READ = 0;
+    private static final int EMPTY = 1;
+    private static final int OVERRUN = 2;
+    
+    public enum Kind { PARK, REMOVE }
+    
+    // One change as copied out for a subscriber; the object is reused, so copy what must outlive the call
+    public static final class Change {
+        private long sequence;
+        private Kind kind;
+        private int spotIndex;
+        private Vehicle vehicle;
+        
+        public long getSequence() { return sequence; }
+        public Kind getKind() { return kind; }
+        public int getSpotIndex() { return spotIndex; }
+        // The vehicle that parked or left
+        public Vehicle getVehicle() { return vehicle; }
+    }
+    
+    public interface Handler {
+        // endOfBatch is set on the last change available right now, or the last of maxBatch
+        void onChange(Change change, boolean endOfBatch);
+        
+        // The subscriber was more than a ring behind and missed this many changes
+        default void onOverrun(long missed) {
+        }
+    }
+    
+    public final class Subscription implements Closeable {
+        private final String name;
+        private final int maxBatch;
+        private final Handler handler;
+        private final Thread thread;
+        private final Change current = new Change();
+        private final Change lookahead = new Change();
+        private volatile long next; // Next sequence to read
+        private volatile long missed;
+        private volatile boolean closed;
+        
+        private Subscription(String name, int maxBatch, Handler handler) {
+            this.name = name;
+            this.maxBatch = maxBatch;
+            this.handler = handler;
+            thread = new Thread(this::run, "parking-feed-" + name);
+            thread.setDaemon(true);
+        }
+        
+        public String getName() { return name; }
+        // How far this subscriber has read, e.g. to compare with getCursor()
+        public long getSequence() { return next; }
+        public long getMissed() { return missed; }
+        
+        // Safe to call from the handler; the subscriber's thread ends after its current batch
+        @Override
+        public void close() {
+            closed = true;
+            synchronized (subscriptions) {
+                subscriptions.remove(this);
+                active = !subscriptions.isEmpty();
+            }
+            LockSupport.unpark(thread);
+        }
+        
+        private void run() {
+            int idle = 0;
+            while (!closed) {
+                int handled = poll();
+                if (handled > 0) {
+                    idle = 0;
+                } else if (idle < SPINS) {
+                    idle++;
+                    Thread.onSpinWait();
+                } else if (idle < SPINS + YIELDS) {
+                    idle++;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+            }
+        }
+        
+        // Hands over up to maxBatch changes; returns how many
+        private int poll() {
+            long sequence = next;
+            int state = read(sequence, current);
+            if (state == OVERRUN) {
+                skipToNewest(sequence);
+                return 1;
+            }
+            int handled = 0;
+            Change change = current;
+            Change spare = lookahead;
+            while (state == READ && !closed) {
+                handled++;
+                state = handled < maxBatch ? read(sequence + 1, spare) : EMPTY;
+                deliver(change, state != READ);
+                sequence++;
+                Change swap = change;
+                change = spare;
+                spare = swap;
+            }
+            next = sequence;
+            return handled;
+        }
+        
+        private void deliver(Change change, boolean endOfBatch) {
+            try {
+                handler.onChange(change, endOfBatch);
+            } catch (RuntimeException e) {
+                // One bad change must not stop the feed for this subscriber
+                System.err.println("Change feed subscriber " + name + " failed: " + e);
+            }
+        }
+        
+        private void skipToNewest(long sequence) {
+            long newest = cursor.get();
+            next = newest;
+            missed += newest - sequence;
+            try {
+                handler.onOverrun(newest - sequence);
+            } catch (RuntimeException e) {
+                System.err.println("Change feed subscriber " + name + " failed: " + e);
+            }
+        }
+    }
+    
+    private final int size;
+    private final int mask;
+    private final Kind[] kinds;
+    private final int[] spots;
+    private final Vehicle[] vehicles;
+    private final AtomicLongArray stamps;               // Sequence each slot holds
+    private final AtomicLong cursor = new AtomicLong(); // Next sequence to hand out
+    private volatile boolean active;                    // Nothing is written while nobody listens
+    private final List<Subscription> subscriptions = new ArrayList<>(); // Guarded by itself
+    
+    public ChangeFeed(int bufferSize) {
+        if (bufferSize < 2 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Buffer size must be a power of two, got " + bufferSize);
+        }
+        size = bufferSize;
+        mask = bufferSize - 1;
+        kinds = new Kind[bufferSize];
+        spots = new int[bufferSize];
+        vehicles = new Vehicle[bufferSize];
+        stamps = new AtomicLongArray(bufferSize);
+        for (int slot = 0; slot < bufferSize; slot++) {
+            stamps.set(slot, slot - (long) bufferSize); // As if a lap before sequence 0 had been written
+        }
+    }
+    
+    /**
+     * Starts a subscriber that sees every change published from now on.
+     * Its handler runs on the subscriber's own thread, up to maxBatch
+     * changes per batch.
+     */
+    public Subscription subscribe(String name, int maxBatch, Handler handler) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + maxBatch);
+        }
+        Subscription subscription = new Subscription(name, maxBatch, handler);
+        synchronized (subscriptions) {
+            subscriptions.add(subscription);
+            active = true;
+        }
+        // Read after active is set, so no change published from here on is skipped
+        subscription.next = cursor.get();
+        subscription.thread.start();
+        return subscription;
+    }
+    
+    // Sequence the next change will get
+    public long getCursor() {
+        return cursor.get();
+    }
+    
+    public int getBufferSize() {
+        return size;
+    }
+    
+    // Called by the engine after the change is visible in its own state
+    void publish(Kind kind, int spotIndex, Vehicle vehicle) {
+        if (!active) {
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & mask;
+        // Only waits for a writer a whole ring ahead that has not finished the same slot yet
+        while (!stamps.compareAndSet(slot, sequence - size, WRITING)) {
+            Thread.onSpinWait();
+        }
+        kinds[slot] = kind;
+        spots[slot] = spotIndex;
+        vehicles[slot] = vehicle;
+        stamps.set(slot, sequence);
+    }
+    
+    // Copies the slot for sequence into change, checking the stamp again afterwards in case it was overwritten meanwhile
+    private int read(long sequence, Change change) {
+        int slot = (int) sequence & mask;
+        long stamp = stamps.get(slot);
+        if (stamp == sequence) {
+            change.sequence = sequence;
+            change.kind = kinds[slot];
+            change.spotIndex = spots[slot];
+            change.vehicle = vehicles[slot];
+            VarHandle.loadLoadFence();
+            if (stamps.get(slot) == sequence) {
+                return READ;
+            }
+            return OVERRUN;
+        }
+        // Not written yet, unless writers have already lapped this sequence
+        return stamp > sequence || cursor.get() - sequence > size ? OVERRUN : EMPTY;
+    }
+}
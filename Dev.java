@@ -2,17 +2,19 @@ import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
 
 public class ParkingManagementSystem extends JFrame {
-    private Vehicle[] parkedVehicles = new Vehicle[20];
-    private ParkingSpot[] parkingSpots = new ParkingSpot[20];
-    private JPanel mainPanel, spotPanel;
+    private static final int TILE_GRID_LIMIT = 400; // Larger lots use the virtualized lot map, as in the main frame
+
+    private final ParkingEngine engine;
+    private final EngineWorker engineWorker = new EngineWorker("parking-ui-engine");
+    private SpotRefreshCoalescer spotRefresher;
+    private JPanel mainPanel;
+    private SpotView spotView;
     private JTextField vehicleNumberField;
     private JComboBox<String> vehicleTypeCombo;
-
-    private static final double CAR_AMOUNT = 5.00;
-    private static final double MOTORCYCLE_AMOUNT = 3.00;
-    private static final double TRUCK_AMOUNT = 8.00;
+    private JLabel statusLabel;
 
     private Color bgColor = new Color(220, 220, 220);
     private Color panelColor = new Color(180, 180, 180);
@@ -22,10 +24,8 @@ public class ParkingManagementSystem extends JFrame {
     private Color textColor = new Color(0, 0, 0);
     private Color buttonTextColor = new Color(255, 255, 255);
 
-    public ParkingManagementSystem() {
-        for (int i = 0; i < 20; i++) {
-            parkingSpots[i] = new ParkingSpot(i + 1);
-        }
+    public ParkingManagementSystem(LotLayout layout) {
+        engine = new ParkingEngine(layout);
         setupGUI();
     }
 
@@ -40,6 +40,7 @@ public class ParkingManagementSystem extends JFrame {
 
         mainPanel.add(createHeaderPanel(), BorderLayout.NORTH);
         mainPanel.add(createParkingView(), BorderLayout.CENTER);
+        mainPanel.add(createStatusBar(), BorderLayout.SOUTH);
 
         add(mainPanel);
         setLocationRelativeTo(null);
@@ -58,6 +59,14 @@ public class ParkingManagementSystem extends JFrame {
         return headerPanel;
     }
 
+    private JLabel createStatusBar() {
+        statusLabel = new JLabel("Ready");
+        statusLabel.setForeground(textColor);
+        statusLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        return statusLabel;
+    }
+
     private JPanel createParkingView() {
         JPanel parkingView = new JPanel(new BorderLayout(10, 10));
         parkingView.setBackground(bgColor);
@@ -74,7 +83,8 @@ public class ParkingManagementSystem extends JFrame {
         ));
         setupInputComponents(inputPanel);
 
-        spotPanel = new JPanel(new GridLayout(4, 5, 10, 10));
+        JComponent spotPanel = createSpotPanel();
+        spotRefresher = new SpotRefreshCoalescer(spotView, engine.getCapacity());
         spotPanel.setBackground(bgColor);
         spotPanel.setBorder(BorderFactory.createTitledBorder(
                 BorderFactory.createLineBorder(textColor, 2),
@@ -84,7 +94,6 @@ public class ParkingManagementSystem extends JFrame {
                 new Font("Arial", Font.BOLD, 16),
                 textColor
         ));
-        updateSpotPanel();
 
         parkingView.add(inputPanel, BorderLayout.NORTH);
         parkingView.add(spotPanel, BorderLayout.CENTER);
@@ -92,6 +101,31 @@ public class ParkingManagementSystem extends JFrame {
         return parkingView;
     }
 
+    private JComponent createSpotPanel() {
+        if (engine.getCapacity() <= TILE_GRID_LIMIT) {
+            SpotGridPanel grid = new SpotGridPanel(engine, freeSpotColor, occupiedSpotColor, textColor);
+            spotView = grid;
+            return grid;
+        }
+
+        LotMapPanel map = new LotMapPanel(engine, freeSpotColor, occupiedSpotColor, textColor);
+        map.setBackground(bgColor);
+        spotView = map;
+
+        JPanel mapPanel = new JPanel(new BorderLayout(5, 5));
+        if (map.getLevelCount() > 1) {
+            JComboBox<String> levelCombo = new JComboBox<>();
+            for (LotLayout.Level level : engine.getLayout().getLevels()) {
+                levelCombo.addItem("Level " + level.getNumber());
+            }
+            styleComboBox(levelCombo);
+            levelCombo.addActionListener(e -> map.setLevel(levelCombo.getSelectedIndex()));
+            mapPanel.add(levelCombo, BorderLayout.NORTH);
+        }
+        mapPanel.add(new JScrollPane(map), BorderLayout.CENTER);
+        return mapPanel;
+    }
+
     private void setupInputComponents(JPanel panel) {
         panel.setLayout(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -103,7 +137,12 @@ public class ParkingManagementSystem extends JFrame {
         styleTextField(vehicleNumberField);
 
         JLabel vehicleTypeLabel = createStyledLabel("Vehicle Type:");
-        vehicleTypeCombo = new JComboBox<>(new String[]{"Car ($5.00)", "Motorcycle ($3.00)", "Truck ($8.00)"});
+        String[] labels = new String[VehicleType.count()];
+        for (int i = 0; i < labels.length; i++) {
+            VehicleType type = VehicleType.byOrdinal(i);
+            labels[i] = String.format("%s ($%.2f)", type, engine.getTariff().getFirstHourCents(type) / 100.0);
+        }
+        vehicleTypeCombo = new JComboBox<>(labels);
         styleComboBox(vehicleTypeCombo);
 
         JButton parkButton = createStyledButton("Park Vehicle");
@@ -131,114 +170,38 @@ public class ParkingManagementSystem extends JFrame {
         panel.add(removeButton, gbc);
     }
 
-    private void updateSpotPanel() {
-        spotPanel.removeAll();
-
-        for (ParkingSpot spot : parkingSpots) {
-            JPanel spotBox = new JPanel(new BorderLayout());
-            spotBox.setBackground(spot.isOccupied() ? occupiedSpotColor : freeSpotColor);
-            spotBox.setBorder(BorderFactory.createLineBorder(textColor, 2));
-
-            JLabel spotLabel = new JLabel("Spot " + spot.getSpotNumber(), SwingConstants.CENTER);
-            spotLabel.setForeground(textColor);
-            spotLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            spotBox.add(spotLabel, BorderLayout.NORTH);
-
-            if (spot.isOccupied()) {
-                JPanel vehicleInfoPanel = new JPanel(new GridLayout(2, 1));
-                vehicleInfoPanel.setBackground(occupiedSpotColor);
-
-                JLabel numberLabel = new JLabel(spot.getParkedVehicle().getNumber(), SwingConstants.CENTER);
-                JLabel typeLabel = new JLabel(spot.getParkedVehicle().getType() + 
-                    " ($" + String.format("%.2f", spot.getParkedVehicle().getAmount()) + ")", SwingConstants.CENTER);
-
-                numberLabel.setForeground(textColor);
-                typeLabel.setForeground(textColor);
-
-                numberLabel.setFont(new Font("Arial", Font.BOLD, 12));
-                typeLabel.setFont(new Font("Arial", Font.BOLD, 11));
-
-                vehicleInfoPanel.add(numberLabel);
-                vehicleInfoPanel.add(typeLabel);
-
-                spotBox.add(vehicleInfoPanel, BorderLayout.CENTER);
-            }
-
-            spotPanel.add(spotBox);
-        }
-
-        spotPanel.revalidate();
-        spotPanel.repaint();
+    private void updateSpotPanel(ParkingResult result) {
+        // Only the spot touched by this park/remove is repainted
+        spotRefresher.markDirty(result.getSpotNumber() - 1);
     }
 
     private void parkVehicle() {
         String number = vehicleNumberField.getText().trim();
-        if (!number.matches("^[A-Za-z0-9]{2,}$")) return;
-
-        String selected = (String) vehicleTypeCombo.getSelectedItem();
-        String type = selected.split(" ")[0];
-        double amount = getAmount(type);
-
-        if (findVehicleIndex(number) != -1) return;
 
-        ParkingSpot spot = findAvailableSpot();
-        if (spot == null) return;
+        VehicleType type = VehicleType.byOrdinal(vehicleTypeCombo.getSelectedIndex());
 
-        Vehicle vehicle = new Vehicle(number, type, amount);
-        spot.occupy(vehicle);
-
-        for (int i = 0; i < 20; i++) {
-            if (parkedVehicles[i] == null) {
-                parkedVehicles[i] = vehicle;
-                break;
-            }
-        }
-
-        updateSpotPanel();
-        vehicleNumberField.setText("");
+        engineWorker.submit(() -> engine.parkVehicle(number, type),
+                result -> onCompleted(result, number), this::showEngineError);
     }
 
     private void removeVehicle() {
         String number = vehicleNumberField.getText().trim();
-        if (!number.matches("^[A-Za-z0-9]{2,}$")) return;
-
-        int index = findVehicleIndex(number);
-        if (index == -1) return;
-
-        parkedVehicles[index] = null;
-
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.getParkedVehicle() != null &&
-                spot.getParkedVehicle().getNumber().equals(number)) {
-                spot.vacate();
-                break;
-            }
-        }
 
-        updateSpotPanel();
-        vehicleNumberField.setText("");
+        engineWorker.submit(() -> engine.removeVehicle(number),
+                result -> onCompleted(result, number), this::showEngineError);
     }
 
-    private ParkingSpot findAvailableSpot() {
-        for (ParkingSpot spot : parkingSpots) {
-            if (!spot.isOccupied()) return spot;
-        }
-        return null;
-    }
+    private void onCompleted(ParkingResult result, String number) {
+        if (!result.isSuccess()) return;
 
-    private int findVehicleIndex(String number) {
-        for (int i = 0; i < 20; i++) {
-            if (parkedVehicles[i] != null &&
-                parkedVehicles[i].getNumber().equals(number)) return i;
-        }
-        return -1;
+        updateSpotPanel(result);
+        if (vehicleNumberField.getText().trim().equals(number)) vehicleNumberField.setText("");
     }
 
-    private double getAmount(String type) {
-        if (type.equals("Car")) return CAR_AMOUNT;
-        if (type.equals("Motorcycle")) return MOTORCYCLE_AMOUNT;
-        if (type.equals("Truck")) return TRUCK_AMOUNT;
-        return 0.0;
+    // EngineWorker calls this on the EDT; unlike a dialog, the status bar never blocks the next entry
+    private void showEngineError(Throwable error) {
+        statusLabel.setForeground(occupiedSpotColor.darker());
+        statusLabel.setText("System Error: Unexpected error: " + error.getMessage());
     }
 
     private JLabel createStyledLabel(String text) {
@@ -271,49 +234,14 @@ public class ParkingManagementSystem extends JFrame {
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new ParkingManagementSystem().setVisible(true));
-    }
-}
-
-class Vehicle {
-    private String number, type;
-    private double amount;
-
-    public Vehicle(String number, String type, double amount) {
-        this.number = number;
-        this.type = type;
-        this.amount = amount;
-    }
-
-    public String getNumber() { return number; }
-    public String getType() { return type; }
-    public double getAmount() { return amount; }
-}
-
-class ParkingSpot {
-    private int spotNumber;
-    private Vehicle parkedVehicle;
-    private boolean occupied;
-
-    public ParkingSpot(int spotNumber) {
-        this.spotNumber = spotNumber;
-    }
-
-    public boolean occupy(Vehicle vehicle) {
-        if (occupied) return false;
-        this.parkedVehicle = vehicle;
-        occupied = true;
-        return true;
-    }
-
-    public boolean vacate() {
-        if (!occupied) return false;
-        parkedVehicle = null;
-        occupied = false;
-        return true;
+        SwingUtilities.invokeLater(() -> {
+            LotLayout layout;
+            try {
+                layout = LotLayout.loadStartupLayout(20);
+            } catch (IOException e) {
+                layout = LotLayout.singleLevel(20);
+            }
+            new ParkingManagementSystem(layout).setVisible(true);
+        });
     }
-
-    public boolean isOccupied() { return occupied; }
-    public int getSpotNumber() { return spotNumber; }
-    public Vehicle getParkedVehicle() { return parkedVehicle; }
 }
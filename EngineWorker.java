@@ -0,0 +1,40 @@
+import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs engine calls for a Swing client off the Event Dispatch Thread and
+ * hands the results back on it. One worker thread keeps the client's own
+ * requests in the order they were made (a park followed by a remove of the
+ * same plate must not swap); other clients and lanes run on their own threads.
+ */
+public class EngineWorker {
+    private final ExecutorService executor;
+    
+    public EngineWorker(String name) {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true); // Never keeps the JVM alive after the frame closes
+            return thread;
+        });
+    }
+    
+    // task runs on the worker; onResult or onError runs on the EDT afterwards
+    public <T> void submit(Supplier<T> task, Consumer<T> onResult, Consumer<Throwable> onError) {
+        CompletableFuture.supplyAsync(task, executor).whenComplete((result, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    onError.accept(error.getCause() != null ? error.getCause() : error);
+                } else {
+                    onResult.accept(result);
+                }
+            }));
+    }
+    
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for GateServer: simulates many gates, each on its own
+ * connection, cycling through park / find / remove for its own plates.
+ * Each gate keeps up to --pipeline requests in flight.
+ *
+ * Start the frame with -Dparking.gate.port=7070 (or any program that calls
+ * GateServer.start) and run:
+ *   java GateLoadGenerator [--host 127.0.0.1] [--port 7070] [--gates 64]
+ *       [--requests 20000] [--pipeline 8]
+ * --requests is per gate. Prints requests/s, p50/p99 latency and the number
+ * of ERR responses; any error makes the exit status 1.
+ */
+public class GateLoadGenerator {
+    private static final int PLATES_PER_GATE = 256; // Reused in turn; each is removed long before it comes round again
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "7070"));
+        int gates = Integer.parseInt(options.getOrDefault("gates", "64"));
+        int requestsPerGate = Integer.parseInt(options.getOrDefault("requests", "20000"));
+        int pipeline = Integer.parseInt(options.getOrDefault("pipeline", "8"));
+        if (gates < 1 || requestsPerGate < 1 || pipeline < 1) {
+            throw new IllegalArgumentException("--gates, --requests and --pipeline must be positive");
+        }
+        
+        long[][] latencies = new long[gates][];
+        AtomicLong errors = new AtomicLong();
+        CyclicBarrier start = new CyclicBarrier(gates + 1);
+        Thread[] threads = new Thread[gates];
+        Throwable[] failures = new Throwable[gates];
+        for (int g = 0; g < gates; g++) {
+            int gate = g;
+            threads[g] = new Thread(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    socket.setTcpNoDelay(true);
+                    start.await();
+                    latencies[gate] = runGate(socket, gate, requestsPerGate, pipeline, errors);
+                } catch (Exception e) {
+                    failures[gate] = e;
+                    start.reset(); // Don't leave the other gates waiting forever
+                }
+            }, "gate-" + g);
+            threads[g].start();
+        }
+        start.await();
+        long startNanos = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        
+        for (int g = 0; g < gates; g++) {
+            if (failures[g] != null) {
+                throw new IOException("Gate " + g + " failed: " + failures[g], failures[g]);
+            }
+        }
+        long[] all = new long[gates * requestsPerGate];
+        for (int g = 0; g < gates; g++) {
+            System.arraycopy(latencies[g], 0, all, g * requestsPerGate, requestsPerGate);
+        }
+        Arrays.sort(all);
+        System.out.printf("gates=%d pipeline=%d requests=%d seconds=%.2f requests_per_sec=%.0f p50_us=%d p99_us=%d errors=%d%n",
+            gates, pipeline, all.length, elapsedNanos / 1e9, all.length * 1e9 / elapsedNanos,
+            all[all.length / 2] / 1000, all[(int) (all.length * 0.99)] / 1000, errors.get());
+        if (errors.get() > 0) {
+            System.exit(1);
+        }
+    }
+    
+    // One gate: returns the latency of each request, from being sent to its response arriving
+    private static long[] runGate(Socket socket, int gate, int requests, int pipeline, AtomicLong errors) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        long[] latencies = new long[requests];
+        long[] sentAt = new long[requests];
+        StringBuilder batch = new StringBuilder();
+        int sent = 0;
+        int received = 0;
+        while (received < requests) {
+            // Top the pipeline up in one write, then wait for at least one response
+            batch.setLength(0);
+            int batchStart = sent;
+            while (sent < requests && sent - received < pipeline) {
+                appendRequest(batch, gate, sent++);
+            }
+            if (sent > batchStart) {
+                long now = System.nanoTime();
+                for (int i = batchStart; i < sent; i++) {
+                    sentAt[i] = now;
+                }
+                out.write(batch.toString().getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+            do {
+                String response = in.readLine();
+                if (response == null) {
+                    throw new IOException("Server closed the connection after " + received + " responses");
+                }
+                if (!response.startsWith("OK")) {
+                    errors.incrementAndGet();
+                }
+                latencies[received] = System.nanoTime() - sentAt[received];
+                received++;
+            } while (received < sent && in.ready());
+        }
+        return latencies;
+    }
+    
+    // Each plate is parked, looked up and removed, in that order
+    private static void appendRequest(StringBuilder batch, int gate, int request) {
+        int plate = (request / 3) % PLATES_PER_GATE;
+        switch (request % 3) {
+            case 0:
+                batch.append("PARK G").append(gate).append('X').append(plate).append(" Car\n");
+                break;
+            case 1:
+                batch.append("FIND G").append(gate).append('X').append(plate).append('\n');
+                break;
+            default:
+                batch.append("REMOVE G").append(gate).append('X').append(plate).append('\n');
+                break;
+        }
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP service for entry/exit gate controllers, built on one NIO selector
+ * thread. The protocol is one ASCII line per request and per response, and a
+ * gate may pipeline requests; responses come back in request order.
+ *
+ *   PARK plate type [gate] -> OK spot              | ERR status
+ *   REMOVE plate           -> OK spot feeCents     | ERR status
+ *   FIND plate             -> OK spot type         | ERR NOT_PARKED
+ *   SEARCH plate           -> OK n plate:spot ...  (up to 3 parked plates within 2 edits, closest first)
+ *   FREE type              -> OK freeSpots
+ *   OCCUPANCY              -> OK parked free capacity
+ *   WATCH                  -> OK, then a line per park/remove from then on:
+ *                             CHANGE PARK spot plate type | CHANGE REMOVE spot plate type
+ *                             and RESYNC missed when the board fell too far behind
+ *
+ * The selector thread only reads, splits lines and writes. Engine calls can
+ * wait on the journal's fsync, so they run on a small worker pool; each
+ * connection's requests are drained by one worker at a time, which keeps
+ * them in order without a thread per gate. A gate that pipelines too far
+ * ahead stops being read until its backlog drains.
+ *
+ * WATCH is for display boards: the connection subscribes to the engine's
+ * change feed and is woken once per batch of changes. A board that stops
+ * reading is disconnected once its unsent changes pass a limit.
+ */
+public class GateServer implements Closeable {
+    public static final String PORT_PROPERTY = "parking.gate.port";
+    
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final int MAX_LINE_BYTES = 256;
+    private static final int MAX_PENDING_REQUESTS = 1024; // Per connection, before reads pause
+    private static final int MAX_WATCH_BACKLOG_BYTES = 1 << 20;
+    private static final int WATCH_BATCH = 512;
+    
+    private final ParkingEngine engine;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Queue<Connection> interestChanges = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean closed;
+    
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        
+        // Guarded by this
+        final ArrayDeque<String> requests = new ArrayDeque<>();
+        ByteBuffer out = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        boolean draining;
+        ChangeFeed.Subscription watch;
+        
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+    
+    private GateServer(ParkingEngine engine, int port, int workerThreads) throws IOException {
+        this.engine = engine;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "parking-gate-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        selectorThread = new Thread(this::selectLoop, "parking-gate-selector");
+        selectorThread.setDaemon(true);
+    }
+    
+    // Spots a gate parks in or frees reach the UI and boards through the engine's change feed
+    public static GateServer start(ParkingEngine engine, int port) throws IOException {
+        int workerThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        GateServer server = new GateServer(engine, port, workerThreads);
+        server.selectorThread.start();
+        return server;
+    }
+    
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+    
+    private void selectLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+                Connection changed;
+                while ((changed = interestChanges.poll()) != null) {
+                    updateInterest(changed);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        disconnect(connection);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Selector failed; fall through and release everything
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    stopWatching((Connection) key.attachment());
+                }
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true); // Responses are small and latency matters more than packing
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+    
+    // Selector thread: splits what arrived into request lines and hands them to a worker
+    private void read(Connection connection) throws IOException {
+        int read = connection.channel.read(connection.in);
+        if (read == -1) {
+            disconnect(connection);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        boolean startDrain = false;
+        int lineStart = in.position();
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == '\n') {
+                String line = new String(in.array(), lineStart, i - lineStart, StandardCharsets.US_ASCII).trim();
+                lineStart = i + 1;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                synchronized (connection) {
+                    connection.requests.add(line);
+                    if (!connection.draining) {
+                        connection.draining = true;
+                        startDrain = true;
+                    }
+                }
+            }
+        }
+        in.position(lineStart);
+        in.compact();
+        if (in.position() > MAX_LINE_BYTES) {
+            disconnect(connection); // Not a gate speaking this protocol
+            return;
+        }
+        if (startDrain) {
+            workers.execute(() -> drain(connection));
+        }
+        updateInterest(connection);
+    }
+    
+    private void write(Connection connection) throws IOException {
+        synchronized (connection) {
+            connection.out.flip();
+            connection.channel.write(connection.out);
+            connection.out.compact();
+        }
+        updateInterest(connection);
+    }
+    
+    // Selector thread: read unless the backlog is full, write while responses are waiting
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        int ops;
+        synchronized (connection) {
+            ops = connection.requests.size() < MAX_PENDING_REQUESTS ? SelectionKey.OP_READ : 0;
+            if (connection.out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+        connection.key.interestOps(ops);
+    }
+    
+    // Worker: answers this connection's requests in order until none are left
+    private void drain(Connection connection) {
+        while (true) {
+            String request;
+            synchronized (connection) {
+                request = connection.requests.poll();
+                if (request == null) {
+                    connection.draining = false;
+                    break;
+                }
+            }
+            boolean watch = request.equalsIgnoreCase("WATCH");
+            String response = watch ? null : handle(request);
+            synchronized (connection) {
+                if (watch) {
+                    // Subscribed under the lock, so no change is written before the OK
+                    response = connection.watch == null ? "OK" : "ERR ALREADY_WATCHING";
+                    if (connection.watch == null) {
+                        connection.watch = engine.getChangeFeed().subscribe("gate-board", WATCH_BATCH, boardFeed(connection));
+                    }
+                }
+                append(connection, response);
+            }
+            wakeForWrite(connection);
+        }
+    }
+    
+    // Subscriber thread: queues a line per change and wakes the selector once per batch
+    private ChangeFeed.Handler boardFeed(Connection connection) {
+        return new ChangeFeed.Handler() {
+            @Override
+            public void onChange(ChangeFeed.Change change, boolean endOfBatch) {
+                Vehicle vehicle = change.getVehicle();
+                send("CHANGE " + change.getKind() + " " + (change.getSpotIndex() + 1) + " " + vehicle.getNumber() + " " + vehicle.getType(), endOfBatch);
+            }
+            
+            @Override
+            public void onOverrun(long missed) {
+                send("RESYNC " + missed, true);
+            }
+            
+            private void send(String line, boolean wake) {
+                boolean backlogged;
+                synchronized (connection) {
+                    append(connection, line);
+                    backlogged = connection.out.position() > MAX_WATCH_BACKLOG_BYTES;
+                }
+                if (backlogged) {
+                    disconnect(connection); // The board stopped reading
+                } else if (wake) {
+                    wakeForWrite(connection);
+                }
+            }
+        };
+    }
+    
+    // Caller holds the connection's lock
+    private static void append(Connection connection, String line) {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+        if (connection.out.remaining() < bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(connection.out.capacity() * 2, connection.out.position() + bytes.length));
+            connection.out.flip();
+            larger.put(connection.out);
+            connection.out = larger;
+        }
+        connection.out.put(bytes);
+    }
+    
+    private void wakeForWrite(Connection connection) {
+        interestChanges.add(connection);
+        selector.wakeup();
+    }
+    
+    String handle(String request) {
+        String[] fields = request.split("\\s+");
+        try {
+            switch (fields[0].toUpperCase(Locale.ROOT)) {
+                case "PARK": {
+                    if (fields.length != 3 && fields.length != 4) {
+                        return "ERR USAGE PARK plate type [gate]";
+                    }
+                    VehicleType type = VehicleType.fromName(fields[2]);
+                    if (type == null) {
+                        return "ERR UNKNOWN_TYPE";
+                    }
+                    // Naming the entry gate lets the allocator pick a spot near it
+                    int gate = fields.length == 4 ? engine.getLayout().gateIndexOf(fields[3]) : -1;
+                    if (fields.length == 4 && gate == -1) {
+                        return "ERR UNKNOWN_GATE";
+                    }
+                    ParkingResult result = engine.parkVehicle(fields[1], type, gate);
+                    if (!result.isSuccess()) {
+                        return "ERR " + result.getStatus();
+                    }
+                    return "OK " + result.getSpotNumber();
+                }
+                case "REMOVE": {
+                    if (fields.length != 2) {
+                        return "ERR USAGE REMOVE plate";
+                    }
+                    ParkingResult result = engine.removeVehicle(fields[1]);
+                    if (!result.isSuccess()) {
+                        return "ERR " + result.getStatus();
+                    }
+                    return "OK " + result.getSpotNumber() + " " + result.getFeeCents();
+                }
+                case "FIND": {
+                    if (fields.length != 2) {
+                        return "ERR USAGE FIND plate";
+                    }
+                    ParkingSpot spot = engine.findSpot(fields[1]);
+                    Vehicle vehicle = spot == null ? null : spot.getParkedVehicle();
+                    return vehicle == null ? "ERR " + ParkingResult.Status.NOT_PARKED
+                        : "OK " + spot.getSpotNumber() + " " + vehicle.getType();
+                }
+                case "SEARCH": {
+                    // For an exit camera whose read did not match: the lane can offer the candidates
+                    if (fields.length != 2) {
+                        return "ERR USAGE SEARCH plate";
+                    }
+                    List<ParkingSpot> similar = engine.findSimilarPlates(fields[1], 2, 3);
+                    StringBuilder response = new StringBuilder("OK ").append(similar.size());
+                    for (ParkingSpot spot : similar) {
+                        response.append(' ').append(spot.getParkedVehicle().getNumber()).append(':').append(spot.getSpotNumber());
+                    }
+                    return response.toString();
+                }
+                case "FREE": {
+                    VehicleType type = fields.length == 2 ? VehicleType.fromName(fields[1]) : null;
+                    return type == null ? "ERR USAGE FREE type" : "OK " + engine.getFreeCount(type);
+                }
+                case "OCCUPANCY":
+                    return "OK " + engine.getParkedCount() + " " + engine.getFreeCount() + " " + engine.getCapacity();
+                default:
+                    return "ERR UNKNOWN_COMMAND";
+            }
+        } catch (RuntimeException e) {
+            // E.g. the journal failed; the gate should retry or fall back to a manual ticket
+            return "ERR SERVER_ERROR";
+        }
+    }
+    
+    private void stopWatching(Connection connection) {
+        ChangeFeed.Subscription watch;
+        synchronized (connection) {
+            watch = connection.watch;
+            connection.watch = null;
+        }
+        if (watch != null) {
+            watch.close();
+        }
+    }
+    
+    // Selector thread, or a board's subscriber thread
+    private void disconnect(Connection connection) {
+        stopWatching(connection);
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+}
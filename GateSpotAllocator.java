@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Gives each vehicle a spot that suits the gate it came in by, instead of
+ * filling the lot from spot 1. NEAREST picks the free spot with the shortest
+ * distance from the gate (see LotLayout.distance); BALANCE_LEVELS picks the
+ * level with the largest share of free spots and the nearest spot on it, so
+ * traffic spreads over the ramps instead of queueing on level 1.
+ *
+ * For every gate and level the spots are ranked by distance from the gate,
+ * and each ranking keeps a bitmap of taken ranks with a summary level per 64
+ * words, so the best free rank is found in a few word reads at any lot size.
+ * Which spots are actually taken is decided by one shared bitmap claimed with
+ * compare-and-set; the per-gate rankings follow it. They may briefly show a
+ * taken spot as free (the claim then fails and the gate moves on), but never
+ * keep a free spot marked taken.
+ *
+ * Works on positions 0..n-1 of the spot indices it is given, so it can serve
+ * as one pool of SpotPools.
+ */
+public class GateSpotAllocator implements SpotAllocator {
+    public static final String POLICY_PROPERTY = "parking.allocation";
+    
+    public enum Policy {
+        NEAREST, BALANCE_LEVELS;
+        
+        // "nearest" or "balanced"
+        public static Policy fromKeyword(String keyword) {
+            switch (keyword.trim().toLowerCase(Locale.ROOT)) {
+                case "nearest":
+                    return NEAREST;
+                case "balanced":
+                    return BALANCE_LEVELS;
+                default:
+                    throw new IllegalArgumentException("Unknown allocation policy '" + keyword + "', expected nearest or balanced");
+            }
+        }
+    }
+    
+    private final Policy policy;
+    private final int size;
+    private final int gateCount;
+    private final int[] levelOf;            // Position -> level index
+    private final int[] levelSizes;
+    private final int[][] distance;         // Gate -> position -> distance
+    private final int[][] rankOf;           // Gate -> position -> rank within its level
+    private final int[][][] positionAt;     // Gate -> level -> rank -> position
+    private final RankBitmap[][] rankings;  // Gate -> level, null for levels without spots here
+    private final AtomicLongArray taken;
+    private final AtomicIntegerArray levelFree;
+    private final AtomicInteger freeCount;
+    
+    public GateSpotAllocator(LotLayout layout, Policy policy) {
+        this(layout, SpotOrder.identity(layout.getCapacity()), policy);
+    }
+    
+    // spots lists the lot's spot indices this allocator hands out, ascending; it hands out positions in that list
+    public GateSpotAllocator(LotLayout layout, int[] spots, Policy policy) {
+        this.policy = policy;
+        size = spots.length;
+        int levelCount = layout.getLevels().size();
+        // Without gates, one pseudo gate prefers low spot numbers, as the plain allocators do
+        gateCount = Math.max(1, layout.getGates().size());
+        
+        levelOf = new int[size];
+        levelSizes = new int[levelCount];
+        for (int p = 0; p < size; p++) {
+            levelOf[p] = layout.zoneOf(spots[p]).getLevel().getIndex();
+            levelSizes[levelOf[p]]++;
+        }
+        
+        distance = new int[gateCount][size];
+        rankOf = new int[gateCount][size];
+        positionAt = new int[gateCount][levelCount][];
+        rankings = new RankBitmap[gateCount][levelCount];
+        for (int g = 0; g < gateCount; g++) {
+            for (int p = 0; p < size; p++) {
+                distance[g][p] = layout.getGates().isEmpty() ? spots[p] : layout.distance(g, spots[p]);
+            }
+            Integer[] byDistance = new Integer[size];
+            for (int p = 0; p < size; p++) {
+                byDistance[p] = p;
+            }
+            int[] gateDistance = distance[g];
+            Arrays.sort(byDistance, (a, b) -> gateDistance[a] != gateDistance[b] ? Integer.compare(gateDistance[a], gateDistance[b]) : Integer.compare(a, b));
+            int[] filled = new int[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                positionAt[g][level] = new int[levelSizes[level]];
+                if (levelSizes[level] > 0) {
+                    rankings[g][level] = new RankBitmap(levelSizes[level]);
+                }
+            }
+            for (int p : byDistance) {
+                int level = levelOf[p];
+                rankOf[g][p] = filled[level];
+                positionAt[g][level][filled[level]++] = p;
+            }
+        }
+        
+        taken = new AtomicLongArray((size + 63) >>> 6);
+        levelFree = new AtomicIntegerArray(levelSizes);
+        freeCount = new AtomicInteger(size);
+    }
+    
+    // Policy from -Dparking.allocation, or null when it is not set
+    public static Policy loadStartupPolicy() {
+        String configured = System.getProperty(POLICY_PROPERTY);
+        return configured == null ? null : Policy.fromKeyword(configured);
+    }
+    
+    public Policy getPolicy() {
+        return policy;
+    }
+    
+    @Override
+    public int acquire() {
+        return acquireNear(0);
+    }
+    
+    @Override
+    public int acquireNear(int gateIndex) {
+        int gate = gateIndex >= 0 && gateIndex < gateCount ? gateIndex : 0;
+        RankBitmap[] gateRankings = rankings[gate];
+        while (freeCount.get() > 0) {
+            int level = policy == Policy.BALANCE_LEVELS ? emptiestLevel() : -1;
+            int rank = level == -1 ? -1 : gateRankings[level].firstFree();
+            if (rank == -1) {
+                // Nearest over all levels, also when the emptiest level just filled up
+                int best = Integer.MAX_VALUE;
+                for (int l = 0; l < gateRankings.length; l++) {
+                    int candidate = gateRankings[l] == null ? -1 : gateRankings[l].firstFree();
+                    if (candidate != -1 && distance[gate][positionAt[gate][l][candidate]] < best) {
+                        best = distance[gate][positionAt[gate][l][candidate]];
+                        level = l;
+                        rank = candidate;
+                    }
+                }
+                if (rank == -1) {
+                    return -1;
+                }
+            }
+            
+            int position = positionAt[gate][level][rank];
+            if (claim(position)) {
+                return position;
+            }
+            // Someone else holds it and this gate's ranking has not caught up; mark it here and look again
+            gateRankings[level].set(rank);
+            if (!isTaken(position)) {
+                gateRankings[level].clear(rank); // Released meanwhile
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean claim(int position) {
+        int word = position >>> 6;
+        long bit = 1L << position;
+        while (true) {
+            long current = taken.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (taken.compareAndSet(word, current, current | bit)) {
+                break;
+            }
+        }
+        freeCount.decrementAndGet();
+        int level = levelOf[position];
+        levelFree.decrementAndGet(level);
+        for (int g = 0; g < gateCount; g++) {
+            rankings[g][level].set(rankOf[g][position]);
+        }
+        return true;
+    }
+    
+    @Override
+    public void release(int position) {
+        int word = position >>> 6;
+        long bit = 1L << position;
+        while (true) {
+            long current = taken.get(word);
+            if ((current & bit) == 0) {
+                throw new IllegalStateException("Spot position " + position + " is not allocated");
+            }
+            if (taken.compareAndSet(word, current, current & ~bit)) {
+                break;
+            }
+        }
+        int level = levelOf[position];
+        for (int g = 0; g < gateCount; g++) {
+            rankings[g][level].clear(rankOf[g][position]);
+        }
+        levelFree.incrementAndGet(level);
+        freeCount.incrementAndGet();
+    }
+    
+    @Override
+    public int freeCount() {
+        return freeCount.get();
+    }
+    
+    @Override
+    public int capacity() {
+        return size;
+    }
+    
+    private boolean isTaken(int position) {
+        return (taken.get(position >>> 6) & (1L << position)) != 0;
+    }
+    
+    // Level with the largest free share, lowest index on ties; -1 when none has a free spot
+    private int emptiestLevel() {
+        int best = -1;
+        int bestFree = 0;
+        for (int level = 0; level < levelSizes.length; level++) {
+            int free = levelFree.get(level);
+            if (free > 0 && (best == -1 || (long) free * levelSizes[best] > (long) bestFree * levelSizes[level])) {
+                best = level;
+                bestFree = free;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Bitmap of taken ranks with summary levels: a bit one level up is set
+     * when the word below it is full. Setting a summary bit is re-checked
+     * against the word below, so a summary never hides a free rank for long;
+     * a stale "not full" only costs a look at a full word.
+     */
+    private static final class RankBitmap {
+        private final AtomicLongArray[] levels; // levels[0] has a bit per rank, the last a single word
+        
+        RankBitmap(int size) {
+            int count = 1;
+            for (int bits = size; bits > 64; bits = (bits + 63) >>> 6) {
+                count++;
+            }
+            levels = new AtomicLongArray[count];
+            int bits = size;
+            for (int level = 0; level < count; level++) {
+                int words = (bits + 63) >>> 6;
+                levels[level] = new AtomicLongArray(words);
+                // Bits past the end stand for ranks (or words) that do not exist: always taken
+                if ((bits & 63) != 0) {
+                    levels[level].set(words - 1, -1L << bits);
+                }
+                bits = words;
+            }
+        }
+        
+        int firstFree() {
+            return search(levels.length - 1, 0);
+        }
+        
+        void set(int rank) {
+            mark(0, rank);
+        }
+        
+        void clear(int rank) {
+            unmarkFrom(0, rank);
+        }
+        
+        private int search(int level, int word) {
+            long bits = levels[level].get(word);
+            while (bits != -1L) {
+                int bit = Long.numberOfTrailingZeros(~bits);
+                int index = (word << 6) + bit;
+                if (level == 0) {
+                    return index;
+                }
+                int found = search(level - 1, index);
+                if (found != -1) {
+                    return found;
+                }
+                bits |= 1L << bit; // Full below, the summary has not caught up yet
+            }
+            return -1;
+        }
+        
+        private void mark(int level, int index) {
+            AtomicLongArray words = levels[level];
+            int word = index >>> 6;
+            long bit = 1L << index;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & bit) != 0) {
+                    return;
+                }
+            } while (!words.compareAndSet(word, current, current | bit));
+            
+            if ((current | bit) == -1L && level + 1 < levels.length) {
+                mark(level + 1, word);
+                // A rank freed before the summary was set must not stay hidden
+                if (words.get(word) != -1L) {
+                    unmarkFrom(level + 1, word);
+                }
+            }
+        }
+        
+        private void unmarkFrom(int level, int index) {
+            for (int l = level; l < levels.length; l++) {
+                AtomicLongArray words = levels[l];
+                int word = index >>> 6;
+                long bit = 1L << index;
+                long current;
+                while (((current = words.get(word)) & bit) != 0 && !words.compareAndSet(word, current, current & ~bit)) {
+                    // Retry until the bit is clear
+                }
+                index = word;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// In-memory store: one vehicle reference per spot, null when free
+public class HeapSpotStore implements SpotStore {
+    private final AtomicReferenceArray<Vehicle> parkedVehicles;
+    
+    public HeapSpotStore(int capacity) {
+        parkedVehicles = new AtomicReferenceArray<>(capacity);
+    }
+    
+    @Override
+    public int capacity() {
+        return parkedVehicles.length();
+    }
+    
+    @Override
+    public boolean isOccupied(int spotIndex) {
+        return parkedVehicles.get(spotIndex) != null;
+    }
+    
+    @Override
+    public Vehicle get(int spotIndex) {
+        return parkedVehicles.get(spotIndex);
+    }
+    
+    @Override
+    public void put(int spotIndex, Vehicle vehicle) {
+        if (!parkedVehicles.compareAndSet(spotIndex, null, vehicle)) {
+            throw new IllegalStateException("Spot " + (spotIndex + 1) + " is already occupied");
+        }
+    }
+    
+    @Override
+    public Vehicle clear(int spotIndex) {
+        return parkedVehicles.getAndSet(spotIndex, null);
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram: 16 sub-buckets per power of two up to about
+ * 4.3 seconds plus an overflow bucket, so any quantile is within about 6% of
+ * the true value. Each bucket is a LongAdder so lanes recording at once do
+ * not contend on one counter; recording is a leading-zero count and two
+ * striped adds, and never allocates. Every power of two is a bucket bound,
+ * so coarser power-of-two views (see MetricsServer) add up exactly.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_TRACKED_NANOS = 1L << 32;
+    // Fine buckets up to MAX_TRACKED_NANOS, then the overflow bucket
+    static final int BUCKETS = ((32 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + 1;
+    
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    
+    public LatencyHistogram() {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = new LongAdder();
+        }
+    }
+    
+    public void record(long nanos) {
+        counts[bucket(nanos)].increment();
+        totalNanos.add(nanos);
+    }
+    
+    // Folds another histogram's samples into this one, e.g. per-thread histograms after a run
+    public void add(LatencyHistogram other) {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b].add(other.counts[b].sum());
+        }
+        totalNanos.add(other.totalNanos.sum());
+    }
+    
+    // Inclusive upper bound of a bucket in nanoseconds; Long.MAX_VALUE for the last one
+    public static long upperBoundNanos(int bucket) {
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int group = bucket >>> SUB_BUCKET_BITS;
+        int sub = bucket & (SUB_BUCKETS - 1);
+        if (group == 0) {
+            return sub + 1;
+        }
+        return (long) (SUB_BUCKETS + sub + 1) << (group - 1);
+    }
+    
+    // Copies the bucket counts; concurrent records may land in some buckets and not others
+    public long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = counts[b].sum();
+        }
+        return snapshot;
+    }
+    
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+    
+    // Upper bound of the bucket holding the given quantile, or 0 with no samples
+    public static long quantileNanos(long[] snapshot, double quantile) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int b = 0; b < snapshot.length; b++) {
+            seen += snapshot[b];
+            if (seen >= rank) {
+                return upperBoundNanos(b);
+            }
+        }
+        return upperBoundNanos(snapshot.length - 1);
+    }
+    
+    // Buckets hold (lower, upper] so that powers of two end a bucket rather than start one
+    private static int bucket(long nanos) {
+        if (nanos > MAX_TRACKED_NANOS) {
+            return BUCKETS - 1;
+        }
+        long value = Math.max(1, nanos) - 1;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free allocator for many gates allocating at once. Taken ranks are bits
+ * in an AtomicLongArray claimed with CAS, and a hint remembers the first word
+ * that may still have a free bit, so a busy lot does not rescan full words.
+ * Under contention the order is best effort: a gate that loses a CAS takes
+ * the next free rank instead of waiting.
+ */
+public class LockFreeSpotAllocator implements SpotAllocator {
+    private final int[] rankToSpot;
+    private final int[] spotToRank;
+    private final AtomicLongArray taken;
+    private final AtomicInteger firstFreeWord = new AtomicInteger();
+    private final AtomicInteger freeCount;
+    
+    public LockFreeSpotAllocator(int capacity) {
+        this(SpotOrder.identity(capacity));
+    }
+    
+    // entranceOrder lists spot indices from most to least preferred
+    public LockFreeSpotAllocator(int[] entranceOrder) {
+        rankToSpot = entranceOrder.clone();
+        spotToRank = SpotOrder.invert(rankToSpot);
+        int words = (rankToSpot.length + 63) >>> 6;
+        taken = new AtomicLongArray(words);
+        // Mark the unused tail bits of the last word as taken so they are never handed out
+        int tail = rankToSpot.length & 63;
+        if (tail != 0) {
+            taken.set(words - 1, -1L << tail);
+        }
+        freeCount = new AtomicInteger(rankToSpot.length);
+    }
+    
+    @Override
+    public int acquire() {
+        int rank = acquireFrom(firstFreeWord.get());
+        if (rank == -1) {
+            // The hint may have moved past a word freed concurrently; confirm with a full pass
+            rank = acquireFrom(0);
+        }
+        if (rank == -1) {
+            return -1;
+        }
+        freeCount.decrementAndGet();
+        return rankToSpot[rank];
+    }
+    
+    @Override
+    public boolean claim(int spotIndex) {
+        int rank = spotToRank[spotIndex];
+        int word = rank >>> 6;
+        long bit = 1L << rank;
+        while (true) {
+            long current = taken.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (taken.compareAndSet(word, current, current | bit)) {
+                freeCount.decrementAndGet();
+                return true;
+            }
+        }
+    }
+    
+    @Override
+    public void release(int spotIndex) {
+        int rank = spotToRank[spotIndex];
+        int word = rank >>> 6;
+        long bit = 1L << rank;
+        while (true) {
+            long current = taken.get(word);
+            if ((current & bit) == 0) {
+                throw new IllegalStateException("Spot index " + spotIndex + " is not allocated");
+            }
+            if (taken.compareAndSet(word, current, current & ~bit)) {
+                break;
+            }
+        }
+        freeCount.incrementAndGet();
+        
+        // Pull the hint back so the next acquire sees this better-ranked spot
+        int hint;
+        while ((hint = firstFreeWord.get()) > word && !firstFreeWord.compareAndSet(hint, word)) {
+            // Retry until the hint is at or below this word
+        }
+    }
+    
+    @Override
+    public int freeCount() {
+        return freeCount.get();
+    }
+    
+    @Override
+    public int capacity() {
+        return rankToSpot.length;
+    }
+    
+    private int acquireFrom(int startWord) {
+        for (int word = startWord; word < taken.length(); word++) {
+            long current = taken.get(word);
+            while (current != -1L) {
+                int bitIndex = Long.numberOfTrailingZeros(~current);
+                if (taken.compareAndSet(word, current, current | (1L << bitIndex))) {
+                    return (word << 6) + bitIndex;
+                }
+                current = taken.get(word);
+            }
+            // Word is full; move the hint past it unless someone already moved it
+            firstFreeWord.compareAndSet(word, word + 1);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Physical layout of a lot: levels, each split into zones, each holding a
+ * contiguous run of spots. Spot indices run 0..capacity-1 across the whole
+ * lot, so level and zone are derived from the index instead of stored per spot.
+ *
+ * Layout file format, one zone per line (blank lines and # comments ignored):
+ *   level  zone  spots  [columns  [bay]]
+ * where bay is standard (the default), motorcycle, truck, ev or disabled.
+ * Entry gates are lines of their own:
+ *   gate  name  level  column  row
+ *
+ * Spots sit on a grid per level, as the lot map draws it: zones stacked top
+ * to bottom, each a header row (the aisle) followed by rows of its column
+ * count. Gates are placed on the same grid, and a spot's distance from a
+ * gate is counted in cells along rows and columns, plus a fixed cost per
+ * level of ramp between them.
+ */
+public class LotLayout {
+    public static final String LAYOUT_PROPERTY = "parking.layout";
+    public static final String DEFAULT_LAYOUT_FILE = "lot-layout.txt";
+    
+    private static final int DEFAULT_COLUMNS = 5;
+    private static final int RAMP_DISTANCE = 20; // Cells a change of one level counts as
+    
+    public static final class Level {
+        private final int index;
+        private final int number;
+        private final List<Zone> zones = new ArrayList<>();
+        private int rows; // Grid rows used so far, headers included
+        
+        Level(int index, int number) {
+            this.index = index;
+            this.number = number;
+        }
+        
+        // Position in getLevels(), unlike the number the layout file gives it
+        public int getIndex() { return index; }
+        public int getNumber() { return number; }
+        public List<Zone> getZones() { return Collections.unmodifiableList(zones); }
+        
+        public int getFirstSpotIndex() { return zones.get(0).getFirstSpotIndex(); }
+        
+        public int getSpotCount() {
+            int count = 0;
+            for (Zone zone : zones) {
+                count += zone.getSpotCount();
+            }
+            return count;
+        }
+    }
+    
+    public static final class Zone {
+        private final Level level;
+        private final String name;
+        private final int firstSpotIndex;
+        private final int spotCount;
+        private final int columns;
+        private final BayType bayType;
+        private final int headerRow;
+        
+        Zone(Level level, String name, int firstSpotIndex, int spotCount, int columns, BayType bayType, int headerRow) {
+            this.level = level;
+            this.name = name;
+            this.firstSpotIndex = firstSpotIndex;
+            this.spotCount = spotCount;
+            this.columns = columns;
+            this.bayType = bayType;
+            this.headerRow = headerRow;
+        }
+        
+        public Level getLevel() { return level; }
+        public String getName() { return name; }
+        public int getFirstSpotIndex() { return firstSpotIndex; }
+        public int getSpotCount() { return spotCount; }
+        public int getColumns() { return columns; }
+        public BayType getBayType() { return bayType; }
+        // Grid row of the zone's header on its level; its spots start on the next row
+        public int getHeaderRow() { return headerRow; }
+        
+        public boolean contains(int spotIndex) {
+            return spotIndex >= firstSpotIndex && spotIndex < firstSpotIndex + spotCount;
+        }
+    }
+    
+    public static final class Gate {
+        private final String name;
+        private final Level level;
+        private final int column;
+        private final int row;
+        
+        Gate(String name, Level level, int column, int row) {
+            this.name = name;
+            this.level = level;
+            this.column = column;
+            this.row = row;
+        }
+        
+        public String getName() { return name; }
+        public Level getLevel() { return level; }
+        public int getColumn() { return column; }
+        public int getRow() { return row; }
+    }
+    
+    public static class Builder {
+        private final List<Level> levels = new ArrayList<>();
+        private final List<Zone> zones = new ArrayList<>();
+        private final List<Gate> gates = new ArrayList<>();
+        private int nextSpotIndex;
+        
+        public Builder addZone(int levelNumber, String name, int spotCount, int columns) {
+            return addZone(levelNumber, name, spotCount, columns, BayType.STANDARD);
+        }
+        
+        // Zones must be added level by level, in the order spots are numbered
+        public Builder addZone(int levelNumber, String name, int spotCount, int columns, BayType bayType) {
+            if (spotCount <= 0) {
+                throw new IllegalArgumentException("Zone " + name + " must have at least one spot");
+            }
+            if (columns <= 0) {
+                throw new IllegalArgumentException("Zone " + name + " must have at least one column");
+            }
+            Level level = levels.isEmpty() ? null : levels.get(levels.size() - 1);
+            if (level == null || level.getNumber() != levelNumber) {
+                for (Level existing : levels) {
+                    if (existing.getNumber() == levelNumber) {
+                        throw new IllegalArgumentException("Zones of level " + levelNumber + " must be listed together");
+                    }
+                }
+                level = new Level(levels.size(), levelNumber);
+                levels.add(level);
+            }
+            Zone zone = new Zone(level, name, nextSpotIndex, spotCount, columns, bayType, level.rows);
+            level.zones.add(zone);
+            level.rows += 1 + (spotCount + columns - 1) / columns;
+            zones.add(zone);
+            nextSpotIndex += spotCount;
+            return this;
+        }
+        
+        // A gate comes after at least one zone of its level
+        public Builder addGate(String name, int levelNumber, int column, int row) {
+            if (name == null || name.trim().isEmpty()) {
+                throw new IllegalArgumentException("Gate name cannot be empty");
+            }
+            if (column < 0 || row < 0) {
+                throw new IllegalArgumentException("Gate " + name + " must have a non-negative column and row");
+            }
+            for (Gate gate : gates) {
+                if (gate.getName().equalsIgnoreCase(name)) {
+                    throw new IllegalArgumentException("Duplicate gate " + name);
+                }
+            }
+            for (Level level : levels) {
+                if (level.getNumber() == levelNumber) {
+                    gates.add(new Gate(name, level, column, row));
+                    return this;
+                }
+            }
+            throw new IllegalArgumentException("Gate " + name + " is on level " + levelNumber + ", which has no zones yet");
+        }
+        
+        public LotLayout build() {
+            if (zones.isEmpty()) {
+                throw new IllegalStateException("Lot layout has no zones");
+            }
+            return new LotLayout(levels, zones, gates, nextSpotIndex);
+        }
+    }
+    
+    private final List<Level> levels;
+    private final Zone[] zones;
+    private final int[] zoneStarts;
+    private final List<Gate> gates;
+    private final int capacity;
+    
+    private LotLayout(List<Level> levels, List<Zone> zones, List<Gate> gates, int capacity) {
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        this.gates = Collections.unmodifiableList(new ArrayList<>(gates));
+        this.zones = zones.toArray(new Zone[0]);
+        this.zoneStarts = new int[this.zones.length];
+        for (int i = 0; i < this.zones.length; i++) {
+            zoneStarts[i] = this.zones[i].getFirstSpotIndex();
+        }
+        this.capacity = capacity;
+    }
+    
+    // The original 20-spot lot: one level, one zone, 4 rows of 5
+    public static LotLayout singleLevel(int spotCount) {
+        return new Builder().addZone(1, "A", spotCount, Math.min(spotCount, DEFAULT_COLUMNS)).build();
+    }
+    
+    public static LotLayout load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                
+                String[] fields = line.split("\\s+");
+                if (fields[0].equalsIgnoreCase("gate")) {
+                    if (fields.length != 5) {
+                        throw new IOException(file + ":" + lineNumber + ": expected 'gate name level column row'");
+                    }
+                    try {
+                        builder.addGate(fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                    }
+                    continue;
+                }
+                if (fields.length < 3 || fields.length > 5) {
+                    throw new IOException(file + ":" + lineNumber + ": expected 'level zone spots [columns [bay]]'");
+                }
+                BayType bayType = fields.length == 5 ? BayType.fromKeyword(fields[4]) : BayType.STANDARD;
+                if (bayType == null) {
+                    throw new IOException(file + ":" + lineNumber + ": unknown bay type '" + fields[4] + "'");
+                }
+                try {
+                    int spots = Integer.parseInt(fields[2]);
+                    int columns = fields.length >= 4 ? Integer.parseInt(fields[3]) : Math.min(spots, DEFAULT_COLUMNS);
+                    builder.addZone(Integer.parseInt(fields[0]), fields[1], spots, columns, bayType);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        try {
+            return builder.build();
+        } catch (IllegalStateException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+    
+    // Startup layout: -Dparking.layout=<file>, else ./lot-layout.txt if present, else the default lot
+    public static LotLayout loadStartupLayout(int defaultSpotCount) throws IOException {
+        String configured = System.getProperty(LAYOUT_PROPERTY);
+        if (configured != null) {
+            return load(Paths.get(configured));
+        }
+        Path local = Paths.get(DEFAULT_LAYOUT_FILE);
+        if (Files.isRegularFile(local)) {
+            return load(local);
+        }
+        return singleLevel(defaultSpotCount);
+    }
+    
+    public int getCapacity() { return capacity; }
+    public List<Level> getLevels() { return levels; }
+    
+    public int getZoneCount() { return zones.length; }
+    public Zone getZone(int zoneIndex) { return zones[zoneIndex]; }
+    
+    // Zone lookup by binary search over zone start indices
+    public int zoneIndexOf(int spotIndex) {
+        if (spotIndex < 0 || spotIndex >= capacity) {
+            throw new IndexOutOfBoundsException("Spot index " + spotIndex + " outside lot of " + capacity);
+        }
+        int low = 0;
+        int high = zoneStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (zoneStarts[mid] <= spotIndex) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    public Zone zoneOf(int spotIndex) {
+        return zones[zoneIndexOf(spotIndex)];
+    }
+    
+    public List<Gate> getGates() { return gates; }
+    
+    // Index into getGates(), or -1 when there is no such gate; names ignore case
+    public int gateIndexOf(String name) {
+        for (int i = 0; i < gates.size(); i++) {
+            if (gates.get(i).getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public int getSpotColumn(int spotIndex) {
+        Zone zone = zoneOf(spotIndex);
+        return (spotIndex - zone.getFirstSpotIndex()) % zone.getColumns();
+    }
+    
+    public int getSpotRow(int spotIndex) {
+        Zone zone = zoneOf(spotIndex);
+        return zone.getHeaderRow() + 1 + (spotIndex - zone.getFirstSpotIndex()) / zone.getColumns();
+    }
+    
+    // Cells along rows and columns from the gate to the spot, plus RAMP_DISTANCE per level between them
+    public int distance(int gateIndex, int spotIndex) {
+        Gate gate = gates.get(gateIndex);
+        Zone zone = zoneOf(spotIndex);
+        int local = spotIndex - zone.getFirstSpotIndex();
+        int column = local % zone.getColumns();
+        int row = zone.getHeaderRow() + 1 + local / zone.getColumns();
+        return Math.abs(column - gate.getColumn()) + Math.abs(row - gate.getRow())
+            + RAMP_DISTANCE * Math.abs(zone.getLevel().getIndex() - gate.getLevel().getIndex());
+    }
+    
+    public int getMaxColumns() {
+        int columns = 1;
+        for (Zone zone : zones) {
+            columns = Math.max(columns, zone.getColumns());
+        }
+        return columns;
+    }
+}
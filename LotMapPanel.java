@@ -0,0 +1,282 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Lot map for large garages. The whole level is painted straight from the
+ * engine's occupancy in paintComponent, and only the cells inside the clip
+ * (the visible viewport) are touched, so cost depends on screen size rather
+ * than lot size. Ctrl+wheel zooms, the scroll pane pans, and a click reports
+ * the spot under the cursor.
+ *
+ * Each level is drawn as its zones stacked top to bottom, one header row per
+ * zone followed by the zone's spots in rows of its column count.
+ */
+public class LotMapPanel extends JComponent implements SpotView, Scrollable {
+    private static final int BASE_CELL_SIZE = 28;
+    private static final double MIN_ZOOM = 0.15;
+    private static final double MAX_ZOOM = 4.0;
+    private static final int MIN_TEXT_CELL_SIZE = 40; // Below this only colors are drawn
+    
+    private static final Font HEADER_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font CELL_FONT = new Font("Arial", Font.BOLD, 10);
+    
+    private final ParkingEngine engine;
+    private final LotLayout layout;
+    private final Color freeSpotColor;
+    private final Color occupiedSpotColor;
+    private final Color textColor;
+    
+    private LotLayout.Level level;
+    private int[] zoneFirstRow;   // First cell row of each zone's header on this level
+    private int totalRows;
+    private int columns;
+    private double zoom = 1.0;
+    private IntConsumer spotClickHandler;
+    
+    public LotMapPanel(ParkingEngine engine, Color freeSpotColor, Color occupiedSpotColor, Color textColor) {
+        this.engine = engine;
+        this.layout = engine.getLayout();
+        this.freeSpotColor = freeSpotColor;
+        this.occupiedSpotColor = occupiedSpotColor;
+        this.textColor = textColor;
+        setOpaque(true);
+        setToolTipText(""); // Enables getToolTipText(MouseEvent)
+        setLevel(0);
+        
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int spotIndex = spotIndexAt(e.getX(), e.getY());
+                if (spotIndex != -1 && spotClickHandler != null) {
+                    spotClickHandler.accept(spotIndex);
+                }
+            }
+        });
+        addMouseWheelListener(e -> {
+            if (!e.isControlDown()) {
+                // Having a wheel listener swallows plain scrolling, so hand it to the scroll pane
+                Container scrollPane = SwingUtilities.getAncestorOfClass(JScrollPane.class, this);
+                if (scrollPane != null) {
+                    scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(this, e, scrollPane));
+                }
+                return;
+            }
+            setZoom(zoom * Math.pow(1.1, -e.getPreciseWheelRotation()), e.getPoint());
+        });
+    }
+    
+    public void setSpotClickHandler(IntConsumer spotClickHandler) {
+        this.spotClickHandler = spotClickHandler;
+    }
+    
+    public int getLevelCount() {
+        return layout.getLevels().size();
+    }
+    
+    public void setLevel(int levelIndex) {
+        level = layout.getLevels().get(levelIndex);
+        zoneFirstRow = new int[level.getZones().size()];
+        columns = 1;
+        int row = 0;
+        for (int z = 0; z < zoneFirstRow.length; z++) {
+            LotLayout.Zone zone = level.getZones().get(z);
+            zoneFirstRow[z] = row;
+            row += 1 + (zone.getSpotCount() + zone.getColumns() - 1) / zone.getColumns();
+            columns = Math.max(columns, zone.getColumns());
+        }
+        totalRows = row;
+        revalidate();
+        repaint();
+    }
+    
+    public double getZoom() {
+        return zoom;
+    }
+    
+    // Zooms around the given point so the spot under the cursor stays put
+    public void setZoom(double newZoom, Point anchor) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        if (newZoom == zoom) {
+            return;
+        }
+        double scale = newZoom / zoom;
+        zoom = newZoom;
+        revalidate();
+        
+        Rectangle visible = getVisibleRect();
+        int x = (int) Math.round(anchor.x * scale) - (anchor.x - visible.x);
+        int y = (int) Math.round(anchor.y * scale) - (anchor.y - visible.y);
+        if (getParent() instanceof JViewport) {
+            JViewport viewport = (JViewport) getParent();
+            viewport.setViewSize(getPreferredSize());
+            viewport.setViewPosition(new Point(Math.max(0, x), Math.max(0, y)));
+        }
+        repaint();
+    }
+    
+    @Override
+    public void refreshSpot(int spotIndex) {
+        Rectangle cell = cellBounds(spotIndex);
+        if (cell != null) {
+            repaint(cell);
+        }
+    }
+    
+    @Override
+    public void refreshAll() {
+        repaint();
+    }
+    
+    // Spot index under a point on the current level, or -1 for headers and empty cells
+    public int spotIndexAt(int x, int y) {
+        int cell = cellSize();
+        int col = x / cell;
+        int row = y / cell;
+        if (x < 0 || y < 0 || col >= columns || row >= totalRows) {
+            return -1;
+        }
+        int z = zoneAtRow(row);
+        LotLayout.Zone zone = level.getZones().get(z);
+        int zoneRow = row - zoneFirstRow[z] - 1;
+        if (zoneRow < 0 || col >= zone.getColumns()) {
+            return -1;
+        }
+        int offset = zoneRow * zone.getColumns() + col;
+        return offset < zone.getSpotCount() ? zone.getFirstSpotIndex() + offset : -1;
+    }
+    
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int spotIndex = spotIndexAt(e.getX(), e.getY());
+        if (spotIndex == -1) {
+            return null;
+        }
+        Vehicle vehicle = engine.getParkedVehicle(spotIndex);
+        LotLayout.Zone zone = layout.zoneOf(spotIndex);
+        String bay = zone.getBayType() == BayType.STANDARD ? "" : ", " + zone.getBayType().getKeyword() + " bay";
+        String where = "Spot " + (spotIndex + 1) + " (L" + level.getNumber() + " " + zone.getName() + bay + ")";
+        return vehicle == null ? where + " - free" : where + " - " + vehicle.getNumber() + ", " + vehicle.getType();
+    }
+    
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        int cell = cellSize();
+        return new Dimension(columns * cell, totalRows * cell);
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground() != null ? getBackground() : Color.LIGHT_GRAY);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        
+        int cell = cellSize();
+        int gap = cell >= 8 ? 1 : 0;
+        boolean drawText = cell >= MIN_TEXT_CELL_SIZE;
+        int firstRow = Math.max(0, clip.y / cell);
+        int lastRow = Math.min(totalRows - 1, (clip.y + clip.height) / cell);
+        int firstCol = Math.max(0, clip.x / cell);
+        int lastCol = Math.min(columns - 1, (clip.x + clip.width) / cell);
+        if (firstRow > lastRow || firstCol > lastCol) {
+            return;
+        }
+        
+        // One snapshot for the whole pass, so the map never shows half of a batch
+        OccupancySnapshots.Snapshot occupancy = engine.getOccupancySnapshot();
+        int z = zoneAtRow(firstRow);
+        for (int row = firstRow; row <= lastRow; row++) {
+            while (z + 1 < zoneFirstRow.length && zoneFirstRow[z + 1] <= row) {
+                z++;
+            }
+            LotLayout.Zone zone = level.getZones().get(z);
+            int y = row * cell;
+            
+            if (row == zoneFirstRow[z]) {
+                g.setColor(textColor);
+                g.setFont(HEADER_FONT);
+                g.drawString("Level " + level.getNumber() + " - Zone " + zone.getName(),
+                    4, y + Math.min(cell, 16) - 2);
+                continue;
+            }
+            
+            int rowStart = zone.getFirstSpotIndex() + (row - zoneFirstRow[z] - 1) * zone.getColumns();
+            int rowEnd = Math.min(zone.getFirstSpotIndex() + zone.getSpotCount(), rowStart + zone.getColumns());
+            int colEnd = Math.min(lastCol, rowEnd - rowStart - 1);
+            for (int col = firstCol; col <= colEnd; col++) {
+                int spotIndex = rowStart + col;
+                Vehicle vehicle = occupancy.getVehicle(spotIndex);
+                boolean occupied = vehicle != null;
+                int x = col * cell;
+                g.setColor(occupied ? occupiedSpotColor : freeSpotColor);
+                g.fillRect(x + gap, y + gap, cell - 2 * gap, cell - 2 * gap);
+                if (drawText) {
+                    g.setColor(textColor);
+                    g.setFont(CELL_FONT);
+                    g.drawString(Integer.toString(spotIndex + 1), x + 3, y + 12);
+                    if (occupied) {
+                        g.drawString(vehicle.getNumber(), x + 3, y + 24);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(600, 400);
+    }
+    
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return cellSize();
+    }
+    
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+    
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+    
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+    
+    private int cellSize() {
+        return Math.max(2, (int) Math.round(BASE_CELL_SIZE * zoom));
+    }
+    
+    private Rectangle cellBounds(int spotIndex) {
+        LotLayout.Zone zone = layout.zoneOf(spotIndex);
+        if (zone.getLevel() != level) {
+            return null;
+        }
+        int z = level.getZones().indexOf(zone);
+        int offset = spotIndex - zone.getFirstSpotIndex();
+        int row = zoneFirstRow[z] + 1 + offset / zone.getColumns();
+        int col = offset % zone.getColumns();
+        int cell = cellSize();
+        return new Rectangle(col * cell, row * cell, cell, cell);
+    }
+    
+    // Zones per level are few, so a linear walk is cheap
+    private int zoneAtRow(int row) {
+        int z = 0;
+        while (z + 1 < zoneFirstRow.length && zoneFirstRow[z + 1] <= row) {
+            z++;
+        }
+        return z;
+    }
+}
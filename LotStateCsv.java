@@ -0,0 +1,269 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lot state as CSV, for exchange with other systems: one row per parked
+ * vehicle, read and written a line at a time like LotStateFile.
+ *
+ *   spot,plate,type,entry_time,amount
+ *   12,AB123C,Car,2026-03-02T08:15:00Z,2.50
+ *
+ * spot is the spot number shown to users (from 1). entry_time is an
+ * ISO-8601 instant or epoch millis. amount is the first-hour price in
+ * dollars with at most two decimals, read and written exactly as cents. Plates are checked against the engine's
+ * plate format and stored in canonical form. Blank lines are ignored, and
+ * fields may be quoted.
+ *
+ * Times in the common "2026-03-02T08:15:00Z" shape (optionally with
+ * milliseconds) are formatted and parsed by hand: java.time's general
+ * parser costs more than the rest of a row put together.
+ */
+public class LotStateCsv {
+    static final String HEADER = "spot,plate,type,entry_time,amount";
+    
+    // Returns how many vehicles were written; parking carries on meanwhile, as in LotStateFile.export
+    public static int export(ParkingEngine engine, Path file) throws IOException {
+        OccupancySnapshots.Snapshot snapshot = engine.getOccupancySnapshot();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            StringBuilder row = new StringBuilder(64);
+            for (int spotIndex = 0; spotIndex < snapshot.getCapacity(); spotIndex++) {
+                Vehicle vehicle = snapshot.getVehicle(spotIndex);
+                if (vehicle == null) {
+                    continue;
+                }
+                row.setLength(0);
+                row.append(spotIndex + 1).append(',').append(vehicle.getNumber()).append(',')
+                    .append(vehicle.getType().getDisplayName()).append(',');
+                appendTime(row, vehicle.getEntryTime());
+                row.append(',');
+                appendCents(row, vehicle.getAmountCents());
+                writer.append(row);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return snapshot.getParkedCount();
+    }
+    
+    // Same contract as LotStateFile.load: an empty engine, and emptied again on a bad row
+    public static int load(ParkingEngine engine, Path file) throws IOException {
+        LotStateFile.requireEmpty(engine);
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String where = file + ":" + lineNumber;
+                try {
+                    String[] fields = splitRow(line, where);
+                    if (header) {
+                        header = false;
+                        if (fields[0].equalsIgnoreCase("spot")) {
+                            continue; // Header rows are optional
+                        }
+                    }
+                    restoreRow(engine, fields, where);
+                } catch (IOException | RuntimeException e) {
+                    LotStateFile.clear(engine);
+                    throw e;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static void restoreRow(ParkingEngine engine, String[] fields, String where) throws IOException {
+        if (fields.length != 5) {
+            throw new IOException(where + ": expected " + HEADER);
+        }
+        int spot;
+        try {
+            spot = Integer.parseInt(fields[0]);
+        } catch (NumberFormatException e) {
+            throw new IOException(where + ": bad spot number '" + fields[0] + "'", e);
+        }
+        if (spot < 1) {
+            throw new IOException(where + ": spot numbers start at 1, got " + spot);
+        }
+        String plate = engine.normalizePlate(fields[1]);
+        if (plate == null) {
+            throw new IOException(where + ": invalid plate '" + fields[1] + "'");
+        }
+        VehicleType type = VehicleType.fromName(fields[2]);
+        if (type == null) {
+            throw new IOException(where + ": unknown vehicle type '" + fields[2] + "'");
+        }
+        long entryTime = parseTime(fields[3], where);
+        long amountCents;
+        try {
+            amountCents = new BigDecimal(fields[4]).movePointRight(2).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IOException(where + ": bad amount '" + fields[4] + "'", e);
+        }
+        LotStateFile.restore(engine, spot - 1, new Vehicle(plate, type, amountCents, entryTime), where);
+    }
+    
+    // ISO-8601 instant, or epoch millis when the field is all digits
+    private static long parseTime(String field, String where) throws IOException {
+        try {
+            boolean digits = !field.isEmpty();
+            for (int i = 0; i < field.length() && digits; i++) {
+                digits = Character.isDigit(field.charAt(i));
+            }
+            if (digits) {
+                return Long.parseLong(field);
+            }
+            if (isSimpleTime(field)) {
+                long day = LocalDate.of(number(field, 0, 4), number(field, 5, 2), number(field, 8, 2)).toEpochDay();
+                int hour = number(field, 11, 2);
+                int minute = number(field, 14, 2);
+                int second = number(field, 17, 2);
+                if (hour > 23 || minute > 59 || second > 59) {
+                    throw new DateTimeException("time of day out of range");
+                }
+                int millis = field.length() == 24 ? number(field, 20, 3) : 0;
+                return ((day * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+            }
+            return Instant.parse(field).toEpochMilli();
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IOException(where + ": bad entry time '" + field + "'", e);
+        }
+    }
+    
+    // yyyy-MM-ddTHH:mm:ssZ or yyyy-MM-ddTHH:mm:ss.SSSZ
+    private static boolean isSimpleTime(String field) {
+        int length = field.length();
+        if (length != 20 && length != 24) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = field.charAt(i);
+            boolean ok;
+            switch (i) {
+                case 4: case 7: ok = c == '-'; break;
+                case 10: ok = c == 'T'; break;
+                case 13: case 16: ok = c == ':'; break;
+                case 19: ok = c == (length == 20 ? 'Z' : '.'); break;
+                case 23: ok = c == 'Z'; break;
+                default: ok = c >= '0' && c <= '9';
+            }
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int number(String field, int start, int digits) {
+        int value = 0;
+        for (int i = start; i < start + digits; i++) {
+            value = value * 10 + (field.charAt(i) - '0');
+        }
+        return value;
+    }
+    
+    // Dollars with two decimals, e.g. 250 as 2.50
+    private static void appendCents(StringBuilder row, long cents) {
+        if (cents < 0) {
+            row.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        row.append(cents / 100).append('.').append(fraction < 10 ? "0" : "").append(fraction);
+    }
+    
+    // Same text as Instant.toString for years 0 to 9999 with whole seconds or milliseconds
+    private static void appendTime(StringBuilder row, long epochMillis) {
+        long day = Math.floorDiv(epochMillis, 86_400_000L);
+        int millisOfDay = (int) Math.floorMod(epochMillis, 86_400_000L);
+        LocalDate date = LocalDate.ofEpochDay(day);
+        if (date.getYear() < 0 || date.getYear() > 9999) {
+            row.append(Instant.ofEpochMilli(epochMillis));
+            return;
+        }
+        appendDigits(row, date.getYear(), 4).append('-');
+        appendDigits(row, date.getMonthValue(), 2).append('-');
+        appendDigits(row, date.getDayOfMonth(), 2).append('T');
+        appendDigits(row, millisOfDay / 3_600_000, 2).append(':');
+        appendDigits(row, millisOfDay / 60_000 % 60, 2).append(':');
+        appendDigits(row, millisOfDay / 1000 % 60, 2);
+        if (millisOfDay % 1000 != 0) {
+            appendDigits(row.append('.'), millisOfDay % 1000, 3);
+        }
+        row.append('Z');
+    }
+    
+    private static StringBuilder appendDigits(StringBuilder row, int value, int digits) {
+        for (int divisor = (int) Math.pow(10, digits - 1); divisor > 0; divisor /= 10) {
+            row.append((char) ('0' + value / divisor % 10));
+        }
+        return row;
+    }
+    
+    // Fields are trimmed; a quoted field may hold commas, and "" inside it stands for one quote
+    private static String[] splitRow(String line, String where) throws IOException {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            while (i < line.length() && line.charAt(i) == ' ') {
+                i++;
+            }
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IOException(where + ": unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < line.length() && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IOException(where + ": unexpected text after quoted field " + (fields.size() + 1));
+                }
+                fields.add(field.toString());
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma == -1 ? line.length() : comma;
+                fields.add(line.substring(i, end).trim());
+                i = end;
+            }
+            if (i >= line.length()) {
+                return fields.toArray(new String[0]);
+            }
+            i++; // The comma
+        }
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary dump of which vehicle is in which spot, for moving a lot's
+ * state between installations or seeding it from another system (see
+ * LotStateCsv for the text form). Unlike ParkingSnapshot it is streamed
+ * through a fixed buffer in both directions, so a lot of any size is written
+ * or loaded without building a list of its vehicles first.
+ *
+ * File layout: int magic, short version, int capacity, then a dictionary of
+ * vehicle types (byte count, then byte length + name each) so the file does
+ * not depend on the enum's order. Per occupied spot, in spot order: int spot
+ * index, long entry time millis, long amount in cents, byte type code, byte
+ * plate length, then the plate's characters. The records end with int -1, the
+ * record count and an int CRC32 of everything before it.
+ */
+public class LotStateFile {
+    public static final String SEED_PROPERTY = "parking.seed";
+    
+    private static final int MAGIC = 0x504B4C53; // "PKLS"
+    private static final int VERSION = 1;
+    private static final int END = -1;
+    private static final int HEADER_BYTES = 4 + 2 + 4 + 1;
+    private static final int RECORD_BYTES = 4 + 8 + 8 + 1 + 1; // Before the plate
+    private static final int BUFFER_BYTES = 64 * 1024;
+    
+    // Writes records to a channel as they are given; finish() ends the file
+    public static final class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private final CRC32 crc = new CRC32();
+        private final int capacity;
+        private int count;
+        
+        public Writer(WritableByteChannel channel, int capacity) throws IOException {
+            this.channel = channel;
+            this.capacity = capacity;
+            buffer.putInt(MAGIC).putShort((short) VERSION).putInt(capacity).put((byte) VehicleType.count());
+            for (int code = 0; code < VehicleType.count(); code++) {
+                byte[] name = VehicleType.byOrdinal(code).getDisplayName().getBytes(StandardCharsets.UTF_8);
+                buffer.put((byte) name.length).put(name);
+            }
+        }
+        
+        // Spots must come in ascending order, as readers may rely on it
+        public void write(int spotIndex, Vehicle vehicle) throws IOException {
+            if (spotIndex < 0 || spotIndex >= capacity) {
+                throw new IllegalArgumentException("Spot index " + spotIndex + " is outside a lot of " + capacity + " spots");
+            }
+            String plate = vehicle.getNumber();
+            if (plate.length() > 255) {
+                throw new IllegalArgumentException("Plate " + plate + " is too long to store");
+            }
+            if (buffer.remaining() < RECORD_BYTES + plate.length()) {
+                flush();
+            }
+            buffer.putInt(spotIndex).putLong(vehicle.getEntryTime()).putLong(vehicle.getAmountCents());
+            buffer.put((byte) vehicle.getType().ordinal()).put((byte) plate.length());
+            // Stored plates are upper case letters and digits, one byte each
+            for (int i = 0; i < plate.length(); i++) {
+                char c = plate.charAt(i);
+                if (c > 0x7F) {
+                    throw new IllegalArgumentException("Plate " + plate + " has a character that cannot be stored");
+                }
+                buffer.put((byte) c);
+            }
+            count++;
+        }
+        
+        public void finish() throws IOException {
+            if (buffer.remaining() < 12) {
+                flush();
+            }
+            buffer.putInt(END).putInt(count);
+            flush();
+            buffer.putInt((int) crc.getValue());
+            drain();
+        }
+        
+        public int getCount() {
+            return count;
+        }
+        
+        private void flush() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            drain();
+        }
+        
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    // Reads records one at a time; the checksum and count are verified when next() reaches the end
+    public static final class Reader {
+        private final ReadableByteChannel channel;
+        private final String source;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private final CRC32 crc = new CRC32();
+        private int checked; // Buffer position up to which the checksum has seen the bytes
+        private final int capacity;
+        private final VehicleType[] types;
+        private int count;
+        private boolean finished;
+        private int spotIndex = -1;
+        private Vehicle vehicle;
+        
+        public Reader(ReadableByteChannel channel, String source) throws IOException {
+            this.channel = channel;
+            this.source = source;
+            buffer.limit(0);
+            require(HEADER_BYTES);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(source + " is not a lot state file");
+            }
+            int version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException(source + " has unsupported version " + version);
+            }
+            capacity = buffer.getInt();
+            types = new VehicleType[buffer.get() & 0xFF];
+            for (int code = 0; code < types.length; code++) {
+                require(1);
+                int length = buffer.get() & 0xFF;
+                require(length);
+                String name = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                types[code] = VehicleType.fromName(name);
+                if (types[code] == null) {
+                    throw new IOException(source + " has unknown vehicle type " + name);
+                }
+            }
+        }
+        
+        public boolean next() throws IOException {
+            if (finished) {
+                return false;
+            }
+            require(4);
+            int spot = buffer.getInt();
+            if (spot == END) {
+                finish();
+                return false;
+            }
+            require(RECORD_BYTES - 4);
+            long entryTime = buffer.getLong();
+            long amountCents = buffer.getLong();
+            int code = buffer.get() & 0xFF;
+            int length = buffer.get() & 0xFF;
+            require(length);
+            String plate = new String(buffer.array(), buffer.position(), length, StandardCharsets.US_ASCII);
+            buffer.position(buffer.position() + length);
+            
+            int record = count + 1;
+            if (spot < 0 || spot >= capacity) {
+                throw new IOException(source + ": record " + record + " has spot index " + spot + " outside the lot of " + capacity);
+            }
+            if (code >= types.length) {
+                throw new IOException(source + ": record " + record + " has vehicle type code " + code + " outside the dictionary");
+            }
+            spotIndex = spot;
+            vehicle = new Vehicle(plate, types[code], amountCents, entryTime);
+            count = record;
+            return true;
+        }
+        
+        // Capacity of the lot the file was written from
+        public int getCapacity() { return capacity; }
+        public int getCount() { return count; }
+        public int getSpotIndex() { return spotIndex; }
+        public Vehicle getVehicle() { return vehicle; }
+        
+        private void finish() throws IOException {
+            require(4);
+            int written = buffer.getInt();
+            crc.update(buffer.array(), checked, buffer.position() - checked);
+            checked = buffer.position();
+            require(4);
+            if ((int) crc.getValue() != buffer.getInt()) {
+                throw new IOException(source + " failed its checksum");
+            }
+            if (written != count) {
+                throw new IOException(source + " holds " + count + " records but says " + written);
+            }
+            finished = true;
+        }
+        
+        // Makes sure the buffer holds the next bytes, refilling it from the channel
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            crc.update(buffer.array(), checked, buffer.position() - checked);
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException(source + " is truncated");
+                }
+            }
+            buffer.flip();
+            checked = 0;
+        }
+    }
+    
+    /**
+     * Writes every parked vehicle to file and returns how many. Reads the
+     * engine's latest occupancy snapshot, so parking carries on meanwhile
+     * and the file still shows one moment. Written to a temp file and
+     * renamed, like ParkingSnapshot.
+     */
+    public static int export(ParkingEngine engine, Path file) throws IOException {
+        OccupancySnapshots.Snapshot snapshot = engine.getOccupancySnapshot();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(out, snapshot.getCapacity());
+            for (int spotIndex = 0; spotIndex < snapshot.getCapacity(); spotIndex++) {
+                Vehicle vehicle = snapshot.getVehicle(spotIndex);
+                if (vehicle != null) {
+                    writer.write(spotIndex, vehicle);
+                }
+            }
+            writer.finish();
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return snapshot.getParkedCount();
+    }
+    
+    /**
+     * Puts the vehicles in file into an empty engine, without journaling
+     * them, and returns how many. Plates are checked against the engine's
+     * plate format and stored in canonical form, as LotStateCsv does. If the
+     * file turns out to be damaged or does not fit the lot, the engine is
+     * emptied again before the IOException is thrown.
+     */
+    public static int load(ParkingEngine engine, Path file) throws IOException {
+        requireEmpty(engine);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader reader = new Reader(in, file.toString());
+            try {
+                while (reader.next()) {
+                    String where = file + ": record " + reader.getCount();
+                    restore(engine, reader.getSpotIndex(), checkPlate(engine, reader.getVehicle(), where), where);
+                }
+            } catch (IOException | RuntimeException e) {
+                clear(engine);
+                throw e;
+            }
+            return reader.getCount();
+        }
+    }
+    
+    // -Dparking.seed=<file>: a lot state file, or CSV (see LotStateCsv) when it does not start like one
+    public static int seed(ParkingEngine engine, Path file) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(4);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (start.hasRemaining() && in.read(start) >= 0) {
+                // Short files are CSV
+            }
+        }
+        return !start.hasRemaining() && start.getInt(0) == MAGIC ? load(engine, file) : LotStateCsv.load(engine, file);
+    }
+    
+    private static Vehicle checkPlate(ParkingEngine engine, Vehicle vehicle, String where) throws IOException {
+        String plate = engine.normalizePlate(vehicle.getNumber());
+        if (plate == null) {
+            throw new IOException(where + ": invalid plate '" + vehicle.getNumber() + "'");
+        }
+        return plate.equals(vehicle.getNumber()) ? vehicle
+            : new Vehicle(plate, vehicle.getType(), vehicle.getAmountCents(), vehicle.getEntryTime());
+    }
+    
+    static void requireEmpty(ParkingEngine engine) {
+        if (engine.getParkedCount() != 0) {
+            throw new IllegalStateException("Loading lot state needs an empty engine");
+        }
+    }
+    
+    // where names the record for error messages, e.g. "lot.csv:12"
+    static void restore(ParkingEngine engine, int spotIndex, Vehicle vehicle, String where) throws IOException {
+        if (spotIndex >= engine.getCapacity()) {
+            throw new IOException(where + ": spot " + (spotIndex + 1) + " is outside this lot of " + engine.getCapacity() + " spots");
+        }
+        try {
+            engine.restoreVehicle(spotIndex, vehicle);
+        } catch (IllegalStateException e) {
+            throw new IOException(where + ": spot " + (spotIndex + 1) + " is already taken or " + vehicle.getNumber() + " is parked twice", e);
+        }
+    }
+    
+    // Undoes a partial load; the engine was empty before it
+    static void clear(ParkingEngine engine) {
+        for (int spotIndex = 0; spotIndex < engine.getCapacity(); spotIndex++) {
+            Vehicle vehicle = engine.getParkedVehicle(spotIndex);
+            if (vehicle != null) {
+                engine.restoreRemoval(spotIndex, vehicle.getNumber());
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Spot table kept in a fixed-width memory-mapped file. The file is the state:
+ * a restart maps it again and the engine rebuilds its indexes from it with no
+ * journal replay, and a reporting process can map the same file read-only and
+ * see occupancy without copying.
+ *
+ * Header (64 bytes): int magic, int version, int capacity, int record size.
+ * Record (80 bytes) per spot:
+ *   0  int    seqlock version (odd while being written)
+ *   4  int    spot number
+ *   8  long   entry time millis
+ *   16 long   amount in cents
+ *   24 byte   occupied
+ *   25 byte   plate length
+ *   26 byte   type length
+ *   28 bytes  plate (up to 32, ASCII)
+ *   60 bytes  vehicle type (up to 20, UTF-8)
+ *
+ * Each record has its own seqlock, so readers (in this process or another)
+ * retry instead of seeing a half-written record, and never block the writer.
+ * Records survive a process crash as soon as they are written; call force()
+ * to also survive a power loss.
+ */
+public class MappedSpotStore implements SpotStore, Closeable {
+    public static final String STORE_PROPERTY = "parking.store";
+    
+    private static final int MAGIC = 0x504B5354; // "PKST"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 80;
+    private static final int MAX_PLATE_BYTES = 32;
+    private static final int MAX_TYPE_BYTES = 20;
+    
+    private static final int VERSION_OFFSET = 0;
+    private static final int SPOT_NUMBER_OFFSET = 4;
+    private static final int ENTRY_TIME_OFFSET = 8;
+    private static final int AMOUNT_OFFSET = 16;
+    private static final int OCCUPIED_OFFSET = 24;
+    private static final int PLATE_LENGTH_OFFSET = 25;
+    private static final int TYPE_LENGTH_OFFSET = 26;
+    private static final int PLATE_OFFSET = 28;
+    private static final int TYPE_OFFSET = 60;
+    
+    // Gives the version field acquire/release ordering on the mapped buffer
+    private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final boolean writable;
+    
+    private MappedSpotStore(FileChannel channel, MappedByteBuffer buffer, int capacity, boolean writable) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.writable = writable;
+    }
+    
+    // Maps an existing store, or creates an empty one, for a lot of the given capacity
+    public static MappedSpotStore open(Path file, int capacity) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+            if (exists) {
+                checkHeader(file, channel, capacity);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (exists) {
+                repairInterruptedWrites(buffer, capacity);
+            } else {
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, capacity);
+                buffer.putInt(12, RECORD_BYTES);
+                for (int i = 0; i < capacity; i++) {
+                    buffer.putInt(recordOffset(i) + SPOT_NUMBER_OFFSET, i + 1);
+                }
+                buffer.putInt(0, MAGIC); // Written last: a crash mid-create leaves no valid header
+                buffer.force();
+            }
+            return new MappedSpotStore(channel, buffer, capacity, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    // Maps an existing store for reading only, e.g. from a reporting tool
+    public static MappedSpotStore openReadOnly(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            int capacity = checkHeader(file, channel, -1);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+            return new MappedSpotStore(channel, buffer, capacity, false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+    
+    @Override
+    public boolean isOccupied(int spotIndex) {
+        int offset = recordOffset(spotIndex);
+        while (true) {
+            int version = beginRead(offset);
+            boolean occupied = buffer.get(offset + OCCUPIED_OFFSET) != 0;
+            if (endRead(offset, version)) {
+                return occupied;
+            }
+        }
+    }
+    
+    @Override
+    public Vehicle get(int spotIndex) {
+        int offset = recordOffset(spotIndex);
+        byte[] plate = new byte[MAX_PLATE_BYTES];
+        byte[] type = new byte[MAX_TYPE_BYTES];
+        while (true) {
+            int version = beginRead(offset);
+            if (buffer.get(offset + OCCUPIED_OFFSET) == 0) {
+                if (endRead(offset, version)) {
+                    return null;
+                }
+                continue;
+            }
+            long entryTime = buffer.getLong(offset + ENTRY_TIME_OFFSET);
+            long amountCents = buffer.getLong(offset + AMOUNT_OFFSET);
+            int plateLength = Math.min(buffer.get(offset + PLATE_LENGTH_OFFSET) & 0xFF, MAX_PLATE_BYTES);
+            int typeLength = Math.min(buffer.get(offset + TYPE_LENGTH_OFFSET) & 0xFF, MAX_TYPE_BYTES);
+            buffer.get(offset + PLATE_OFFSET, plate, 0, plateLength);
+            buffer.get(offset + TYPE_OFFSET, type, 0, typeLength);
+            if (endRead(offset, version)) {
+                String typeName = new String(type, 0, typeLength, StandardCharsets.UTF_8);
+                VehicleType vehicleType = VehicleType.fromName(typeName);
+                if (vehicleType == null) {
+                    throw new IllegalStateException("Spot " + (spotIndex + 1) + " holds unknown vehicle type " + typeName);
+                }
+                return new Vehicle(new String(plate, 0, plateLength, StandardCharsets.US_ASCII), vehicleType, amountCents, entryTime);
+            }
+        }
+    }
+    
+    public long getEntryTime(int spotIndex) {
+        int offset = recordOffset(spotIndex);
+        while (true) {
+            int version = beginRead(offset);
+            long entryTime = buffer.getLong(offset + ENTRY_TIME_OFFSET);
+            if (endRead(offset, version)) {
+                return entryTime;
+            }
+        }
+    }
+    
+    @Override
+    public void put(int spotIndex, Vehicle vehicle) {
+        checkWritable();
+        byte[] plate = vehicle.getNumber().getBytes(StandardCharsets.US_ASCII);
+        byte[] type = vehicle.getType().getDisplayName().getBytes(StandardCharsets.UTF_8);
+        if (plate.length > MAX_PLATE_BYTES || type.length > MAX_TYPE_BYTES) {
+            throw new IllegalArgumentException("Vehicle " + vehicle.getNumber() + " does not fit a spot record");
+        }
+        int offset = recordOffset(spotIndex);
+        if (buffer.get(offset + OCCUPIED_OFFSET) != 0) {
+            throw new IllegalStateException("Spot " + (spotIndex + 1) + " is already occupied");
+        }
+        
+        int version = beginWrite(offset);
+        buffer.putLong(offset + ENTRY_TIME_OFFSET, vehicle.getEntryTime());
+        buffer.putLong(offset + AMOUNT_OFFSET, vehicle.getAmountCents());
+        buffer.put(offset + PLATE_LENGTH_OFFSET, (byte) plate.length);
+        buffer.put(offset + TYPE_LENGTH_OFFSET, (byte) type.length);
+        buffer.put(offset + PLATE_OFFSET, plate);
+        buffer.put(offset + TYPE_OFFSET, type);
+        buffer.put(offset + OCCUPIED_OFFSET, (byte) 1);
+        endWrite(offset, version);
+    }
+    
+    @Override
+    public Vehicle clear(int spotIndex) {
+        checkWritable();
+        Vehicle vehicle = get(spotIndex);
+        if (vehicle == null) {
+            return null;
+        }
+        int offset = recordOffset(spotIndex);
+        int version = beginWrite(offset);
+        buffer.put(offset + OCCUPIED_OFFSET, (byte) 0);
+        endWrite(offset, version);
+        return vehicle;
+    }
+    
+    // Flushes written records to the storage device
+    public void force() {
+        if (writable) {
+            buffer.force();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+    
+    private static int recordOffset(int spotIndex) {
+        return HEADER_BYTES + spotIndex * RECORD_BYTES;
+    }
+    
+    private int beginRead(int offset) {
+        while (true) {
+            int version = (int) INT_VIEW.getAcquire(buffer, offset + VERSION_OFFSET);
+            if ((version & 1) == 0) {
+                return version;
+            }
+            Thread.onSpinWait();
+        }
+    }
+    
+    private boolean endRead(int offset, int version) {
+        VarHandle.acquireFence(); // Field reads above must not move past the version re-check
+        return (int) INT_VIEW.getVolatile(buffer, offset + VERSION_OFFSET) == version;
+    }
+    
+    private int beginWrite(int offset) {
+        int version = (int) INT_VIEW.getVolatile(buffer, offset + VERSION_OFFSET);
+        INT_VIEW.setVolatile(buffer, offset + VERSION_OFFSET, version + 1);
+        VarHandle.releaseFence();
+        return version;
+    }
+    
+    private void endWrite(int offset, int version) {
+        INT_VIEW.setRelease(buffer, offset + VERSION_OFFSET, version + 2);
+    }
+    
+    private void checkWritable() {
+        if (!writable) {
+            throw new UnsupportedOperationException("Spot store is open read-only");
+        }
+    }
+    
+    /**
+     * A crash mid-write leaves a record's version odd. The occupied flag is the
+     * last field a park writes and the only one a remove writes, so the record
+     * is consistent either way; just make the version even so readers proceed.
+     */
+    private static void repairInterruptedWrites(MappedByteBuffer buffer, int capacity) {
+        for (int i = 0; i < capacity; i++) {
+            int offset = recordOffset(i) + VERSION_OFFSET;
+            int version = buffer.getInt(offset);
+            if ((version & 1) != 0) {
+                buffer.putInt(offset, version + 1);
+            }
+        }
+    }
+    
+    // Returns the stored capacity; expectedCapacity of -1 accepts any
+    private static int checkHeader(Path file, FileChannel channel, int expectedCapacity) throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_BYTES, channel.size()));
+        if (header.limit() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a parking spot store");
+        }
+        if (header.getInt(4) != FORMAT_VERSION || header.getInt(12) != RECORD_BYTES) {
+            throw new IOException(file + " has an unsupported spot store format");
+        }
+        int capacity = header.getInt(8);
+        if (expectedCapacity != -1 && capacity != expectedCapacity) {
+            throw new IOException(file + " holds " + capacity + " spots but the lot has " + expectedCapacity);
+        }
+        if (channel.size() < HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+            throw new IOException(file + " is truncated");
+        }
+        return capacity;
+    }
+}
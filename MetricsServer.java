@@ -0,0 +1,142 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the engine's metrics at http://localhost:&lt;port&gt;/metrics in the
+ * Prometheus text format. It binds to the loopback address only; put a proxy
+ * in front of it to scrape from another host.
+ */
+public class MetricsServer implements Closeable {
+    public static final String PORT_PROPERTY = "parking.metrics.port";
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final long MIN_BUCKET_NANOS = 1L << 10; // The smallest exported bound, about 1 microsecond
+    
+    private final HttpServer server;
+    
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+    
+    public static MetricsServer start(ParkingEngine engine, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, engine));
+        // One thread: scrapes are rare and each one is a single pass over the counters
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "parking-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return new MetricsServer(server);
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+    
+    public static String render(ParkingEngine engine) {
+        ParkingMetrics metrics = engine.getMetrics();
+        LotLayout layout = engine.getLayout();
+        StringBuilder out = new StringBuilder(4096);
+        
+        header(out, "parking_spots", "gauge", "Spots in the lot");
+        out.append("parking_spots ").append(engine.getCapacity()).append('\n');
+        
+        header(out, "parking_occupied_spots", "gauge", "Occupied spots by zone");
+        for (int z = 0; z < layout.getZoneCount(); z++) {
+            LotLayout.Zone zone = layout.getZone(z);
+            out.append("parking_occupied_spots{level=\"").append(zone.getLevel().getNumber())
+                .append("\",zone=\"").append(escape(zone.getName()))
+                .append("\",bay=\"").append(zone.getBayType().getKeyword()).append("\"} ")
+                .append(metrics.getOccupiedInZone(z)).append('\n');
+        }
+        
+        header(out, "parking_parked_vehicles", "gauge", "Parked vehicles by type");
+        for (int t = 0; t < VehicleType.count(); t++) {
+            VehicleType type = VehicleType.byOrdinal(t);
+            out.append("parking_parked_vehicles{type=\"").append(type).append("\"} ").append(metrics.getOccupied(type)).append('\n');
+        }
+        
+        header(out, "parking_free_spots", "gauge", "Free spots each vehicle type could be given");
+        for (int t = 0; t < VehicleType.count(); t++) {
+            VehicleType type = VehicleType.byOrdinal(t);
+            out.append("parking_free_spots{type=\"").append(type).append("\"} ").append(engine.getFreeCount(type)).append('\n');
+        }
+        
+        header(out, "parking_requests_total", "counter", "Park and remove calls by outcome");
+        for (ParkingResult.Status status : ParkingResult.Status.values()) {
+            out.append("parking_requests_total{status=\"").append(status.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                .append(metrics.getCount(status)).append('\n');
+        }
+        
+        header(out, "parking_revenue_cents_total", "counter", "Fees charged at exit");
+        out.append("parking_revenue_cents_total ").append(metrics.getRevenueCents()).append('\n');
+        
+        String sampled = " (1 in " + ParkingMetrics.LATENCY_SAMPLE_RATE + " calls)";
+        histogram(out, "parking_park_duration_seconds", "Park call latency" + sampled, metrics.getParkLatency());
+        histogram(out, "parking_remove_duration_seconds", "Remove call latency" + sampled, metrics.getRemoveLatency());
+        return out.toString();
+    }
+    
+    private static void respond(HttpExchange exchange, ParkingEngine engine) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render(engine).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    /**
+     * Cumulative buckets as Prometheus expects, at the powers of two from
+     * 1 microsecond up; the histogram's finer buckets nest inside them.
+     * Bounds are converted from nanoseconds to seconds.
+     */
+    private static void histogram(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, "histogram", help);
+        long[] counts = histogram.snapshot();
+        long cumulative = 0;
+        for (int b = 0; b < counts.length - 1; b++) {
+            cumulative += counts[b];
+            long bound = LatencyHistogram.upperBoundNanos(b);
+            if (bound >= MIN_BUCKET_NANOS && Long.bitCount(bound) == 1) {
+                out.append(name).append("_bucket{le=\"").append(bound / 1e9).append("\"} ").append(cumulative).append('\n');
+            }
+        }
+        cumulative += counts[counts.length - 1];
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(histogram.getTotalNanos() / 1e9).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+    
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
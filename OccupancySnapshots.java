@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Immutable, versioned copies of which vehicle is in which spot, for readers
+ * that look at many spots at once (the lot map, display boards, reports) and
+ * want them all from the same moment.
+ *
+ * Writers never wait for readers: each park/remove pushes a change onto a
+ * lock-free stack, one compare-and-set. The changes are folded into a new
+ * snapshot by whoever asks for the latest one, or by a writer once enough
+ * have piled up. A snapshot stores spots in pages of 64, grouped 64 pages
+ * to a chunk, and a new one copies only the chunks and pages that changed,
+ * sharing the rest with its predecessor. Publishing costs the number of
+ * changes plus one chunk reference per 4096 spots, not the size of the lot.
+ *
+ * A batch's changes are pushed together and therefore appear together.
+ * Writers that reach the threshold while another thread is publishing leave
+ * the work to it. A reader in that case waits for the publish in progress and
+ * then folds in whatever is still pending, so latest() never returns a
+ * snapshot older than the changes recorded before the call.
+ */
+public class OccupancySnapshots {
+    private static final int PAGE_BITS = 6;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int CHUNK_BITS = 6; // Pages per chunk, as a power of two
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int PUBLISH_THRESHOLD = 4096; // Pending changes before a writer folds them in
+    
+    public static final class Snapshot {
+        private final long version;
+        private final int capacity;
+        private final int parkedCount;
+        private final Vehicle[][][] chunks; // Chunk -> page -> slot
+        
+        private Snapshot(long version, int capacity, int parkedCount, Vehicle[][][] chunks) {
+            this.version = version;
+            this.capacity = capacity;
+            this.parkedCount = parkedCount;
+            this.chunks = chunks;
+        }
+        
+        // Grows by one for every change folded in, so equal versions mean equal contents
+        public long getVersion() { return version; }
+        public int getCapacity() { return capacity; }
+        public int getParkedCount() { return parkedCount; }
+        
+        public Vehicle getVehicle(int spotIndex) {
+            return chunks[spotIndex >>> (PAGE_BITS + CHUNK_BITS)][(spotIndex >>> PAGE_BITS) & (CHUNK_SIZE - 1)][spotIndex & (PAGE_SIZE - 1)];
+        }
+        
+        public boolean isOccupied(int spotIndex) {
+            return getVehicle(spotIndex) != null;
+        }
+    }
+    
+    // A pending change; vehicle is null when the spot was freed
+    private static final class Change {
+        final int spotIndex;
+        final Vehicle vehicle;
+        Change next;     // Older change
+        int pendingCount; // Changes from this one down, only kept on the top of the stack
+        
+        Change(int spotIndex, Vehicle vehicle) {
+            this.spotIndex = spotIndex;
+            this.vehicle = vehicle;
+        }
+    }
+    
+    // Changes collected by one writer and pushed as a unit
+    public static final class Batch {
+        private Change newest;
+        private Change oldest;
+        private int size;
+        
+        void add(int spotIndex, Vehicle vehicle) {
+            Change change = new Change(spotIndex, vehicle);
+            if (newest == null) {
+                oldest = change;
+            } else {
+                change.next = newest;
+            }
+            newest = change;
+            size++;
+        }
+    }
+    
+    private final AtomicReference<Change> pending = new AtomicReference<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private volatile Snapshot current;
+    
+    // Starts from whatever the store holds
+    public OccupancySnapshots(SpotStore spotStore) {
+        int capacity = spotStore.capacity();
+        int pageCount = (capacity + PAGE_SIZE - 1) >>> PAGE_BITS;
+        Vehicle[][][] chunks = new Vehicle[(pageCount + CHUNK_SIZE - 1) >>> CHUNK_BITS][CHUNK_SIZE][];
+        for (int p = 0; p < pageCount; p++) {
+            chunks[p >>> CHUNK_BITS][p & (CHUNK_SIZE - 1)] = new Vehicle[PAGE_SIZE];
+        }
+        int parked = 0;
+        for (int i = 0; i < capacity; i++) {
+            Vehicle vehicle = spotStore.get(i);
+            if (vehicle != null) {
+                chunks[i >>> (PAGE_BITS + CHUNK_BITS)][(i >>> PAGE_BITS) & (CHUNK_SIZE - 1)][i & (PAGE_SIZE - 1)] = vehicle;
+                parked++;
+            }
+        }
+        current = new Snapshot(0, capacity, parked, chunks);
+    }
+    
+    // Called by the writer that changed the spot, before anyone else can change it again
+    public void record(int spotIndex, Vehicle vehicle) {
+        Change change = new Change(spotIndex, vehicle);
+        Change top;
+        do {
+            top = pending.get();
+            change.next = top;
+            change.pendingCount = top == null ? 1 : top.pendingCount + 1;
+        } while (!pending.compareAndSet(top, change));
+        if (change.pendingCount >= PUBLISH_THRESHOLD) {
+            tryPublish();
+        }
+    }
+    
+    public void record(Batch batch) {
+        if (batch.size == 0) {
+            return;
+        }
+        Change top;
+        do {
+            top = pending.get();
+            batch.oldest.next = top;
+            batch.newest.pendingCount = batch.size + (top == null ? 0 : top.pendingCount);
+        } while (!pending.compareAndSet(top, batch.newest));
+        if (batch.newest.pendingCount >= PUBLISH_THRESHOLD) {
+            tryPublish();
+        }
+    }
+    
+    // Every change recorded before this call is in the result
+    public Snapshot latest() {
+        if (pending.get() != null) {
+            publishLock.lock();
+            try {
+                publish();
+            } finally {
+                publishLock.unlock();
+            }
+        }
+        return current;
+    }
+    
+    private void tryPublish() {
+        if (!publishLock.tryLock()) {
+            return; // Someone else is folding the same changes in
+        }
+        try {
+            publish();
+        } finally {
+            publishLock.unlock();
+        }
+    }
+    
+    // Caller holds publishLock
+    private void publish() {
+        Change changes = pending.getAndSet(null);
+        if (changes == null) {
+            return;
+        }
+        // The stack is newest first; reverse it so later changes to a spot win
+        Change oldest = null;
+        while (changes != null) {
+            Change next = changes.next;
+            changes.next = oldest;
+            oldest = changes;
+            changes = next;
+        }
+        
+        // A chunk or page still shared with the previous snapshot is copied before its first write
+        Snapshot previous = current;
+        Vehicle[][][] chunks = previous.chunks.clone();
+        int parked = previous.parkedCount;
+        long version = previous.version;
+        for (Change change = oldest; change != null; change = change.next) {
+            int chunk = change.spotIndex >>> (PAGE_BITS + CHUNK_BITS);
+            int page = (change.spotIndex >>> PAGE_BITS) & (CHUNK_SIZE - 1);
+            if (chunks[chunk] == previous.chunks[chunk]) {
+                chunks[chunk] = chunks[chunk].clone();
+            }
+            Vehicle[][] pages = chunks[chunk];
+            if (pages[page] == previous.chunks[chunk][page]) {
+                pages[page] = Arrays.copyOf(pages[page], PAGE_SIZE);
+            }
+            Vehicle[] slots = pages[page];
+            int slot = change.spotIndex & (PAGE_SIZE - 1);
+            parked += (change.vehicle != null ? 1 : 0) - (slots[slot] != null ? 1 : 0);
+            slots[slot] = change.vehicle;
+            version++;
+        }
+        current = new Snapshot(version, previous.capacity, parked, chunks);
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A list of park/remove entries applied together by ParkingEngine.applyBatch,
+ * e.g. a gate controller's buffer replayed after a network outage or the
+ * entry queue of an event. Entries carry their own timestamps, so replayed
+ * vehicles are charged from when they really arrived and left.
+ *
+ * Entries are kept in parallel arrays rather than one object each.
+ *
+ * Gate log format, one entry per line (blank lines and # comments ignored):
+ *   park    plate  type  [epoch millis]
+ *   remove  plate        [epoch millis]
+ * An entry without a time is stamped when the file is loaded.
+ */
+public class ParkingBatch {
+    public enum Operation { PARK, REMOVE }
+    
+    private static final int DEFAULT_CAPACITY = 256;
+    
+    private Operation[] operations;
+    private String[] plates;
+    private VehicleType[] types;
+    private long[] times;
+    private int size;
+    
+    public ParkingBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public ParkingBatch(int expectedSize) {
+        int capacity = Math.max(1, expectedSize);
+        operations = new Operation[capacity];
+        plates = new String[capacity];
+        types = new VehicleType[capacity];
+        times = new long[capacity];
+    }
+    
+    public ParkingBatch park(String plate, VehicleType type, long entryTimeMillis) {
+        if (type == null) {
+            throw new IllegalArgumentException("Park entry for " + plate + " needs a vehicle type");
+        }
+        return add(Operation.PARK, plate, type, entryTimeMillis);
+    }
+    
+    public ParkingBatch remove(String plate, long exitTimeMillis) {
+        return add(Operation.REMOVE, plate, null, exitTimeMillis);
+    }
+    
+    public static ParkingBatch load(Path file) throws IOException {
+        ParkingBatch batch = new ParkingBatch();
+        long loadTime = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                
+                String[] fields = line.split("\\s+");
+                try {
+                    if (fields[0].equalsIgnoreCase("park") && (fields.length == 3 || fields.length == 4)) {
+                        VehicleType type = VehicleType.fromName(fields[2]);
+                        if (type == null) {
+                            throw new IOException(file + ":" + lineNumber + ": unknown vehicle type '" + fields[2] + "'");
+                        }
+                        batch.park(fields[1], type, fields.length == 4 ? Long.parseLong(fields[3]) : loadTime);
+                    } else if (fields[0].equalsIgnoreCase("remove") && (fields.length == 2 || fields.length == 3)) {
+                        batch.remove(fields[1], fields.length == 3 ? Long.parseLong(fields[2]) : loadTime);
+                    } else {
+                        throw new IOException(file + ":" + lineNumber + ": expected 'park plate type [time]' or 'remove plate [time]'");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": bad time: " + e.getMessage(), e);
+                }
+            }
+        }
+        return batch;
+    }
+    
+    public int size() { return size; }
+    public Operation getOperation(int i) { return operations[i]; }
+    public String getPlate(int i) { return plates[i]; }
+    public VehicleType getType(int i) { return types[i]; } // null for removes
+    public long getTimeMillis(int i) { return times[i]; }
+    
+    private ParkingBatch add(Operation operation, String plate, VehicleType type, long timeMillis) {
+        if (size == operations.length) {
+            int capacity = size * 2;
+            operations = Arrays.copyOf(operations, capacity);
+            plates = Arrays.copyOf(plates, capacity);
+            types = Arrays.copyOf(types, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        operations[size] = operation;
+        plates[size] = plate;
+        types[size] = type;
+        times[size] = timeMillis;
+        size++;
+        return this;
+    }
+}
@@ -0,0 +1,347 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+
+/**
+ * Benchmark harness for the parking hot paths, used as a regression gate:
+ * every optimization is measured against a saved baseline.
+ *
+ * For each operation, lot size and thread count it reports throughput, p99
+ * latency (sampled every 17th op into a log-linear histogram, so timing does
+ * not dominate; the stride is odd so that both halves of an alternating
+ * workload like park-remove are timed) and bytes allocated per op (from the JVM's per-thread
+ * allocation counters, the same source JMH's gc profiler reads).
+ *
+ * Compile together with the engine sources (everything except the two
+ * frame files) and run:
+ *   java ParkingBenchmark [--ops park-remove,find-spot,find-spot-bitset,find-vehicle,validate,fee]
+ *       [--spots 20,1000,50000,500000] [--threads 1,4,16,64]
+ *       [--warmup 1] [--measure 3] [--out results.csv]
+ *       [--baseline old.csv] [--tolerance 0.10]
+ * With --baseline the run exits with status 1 if any case loses more than
+ * the tolerated fraction of its baseline throughput.
+ */
+public class ParkingBenchmark {
+    private static final int PLATES_PER_THREAD = 1024; // Power of two, indexed with a mask
+    private static final int LATENCY_SAMPLE_STRIDE = 17;
+    private static final VehicleType[] TYPES = {VehicleType.CAR, VehicleType.MOTORCYCLE, VehicleType.TRUCK};
+    
+    // One benchmarked operation, set up fresh for each lot size and thread count
+    private abstract static class Workload {
+        abstract void setup(int spots, int threads);
+        
+        abstract void run(int thread, int iteration);
+    }
+    
+    private static Map<String, Workload> workloads() {
+        Map<String, Workload> workloads = new LinkedHashMap<>();
+        
+        // parkVehicle/removeVehicle pairs on a half-full lot
+        workloads.put("park-remove", new Workload() {
+            private ParkingEngine engine;
+            private String[][] plates;
+            
+            @Override
+            void setup(int spots, int threads) {
+                engine = new ParkingEngine(spots);
+                prefill(engine, spots / 2);
+                plates = plates(threads, "B");
+            }
+            
+            @Override
+            void run(int thread, int iteration) {
+                String plate = plates[thread][(iteration >>> 1) & (PLATES_PER_THREAD - 1)];
+                if ((iteration & 1) == 0) {
+                    engine.parkVehicle(plate, TYPES[iteration % 3]);
+                } else {
+                    engine.removeVehicle(plate);
+                }
+            }
+        });
+        
+        // findAvailableSpot equivalent: allocator acquire + release on a half-full lot
+        workloads.put("find-spot", findSpot(LockFreeSpotAllocator::new));
+        
+        // The same with the single-lock allocator, to show what the lock-free one buys under contention
+        workloads.put("find-spot-bitset", findSpot(BitSetSpotAllocator::new));
+        
+        // findVehicleIndex equivalent: plate lookups that hit
+        workloads.put("find-vehicle", new Workload() {
+            private ParkingEngine engine;
+            private String[] parked;
+            
+            @Override
+            void setup(int spots, int threads) {
+                engine = new ParkingEngine(spots);
+                parked = prefill(engine, spots / 2);
+            }
+            
+            @Override
+            void run(int thread, int iteration) {
+                engine.findVehicle(parked[(iteration * 31 + thread) % parked.length]);
+            }
+        });
+        
+        workloads.put("validate", new Workload() {
+            private String[][] plates;
+            
+            @Override
+            void setup(int spots, int threads) {
+                plates = plates(threads, "V");
+            }
+            
+            @Override
+            void run(int thread, int iteration) {
+                ParkingEngine.validateVehicleNumber(plates[thread][iteration & (PLATES_PER_THREAD - 1)]);
+            }
+        });
+        
+        workloads.put("fee", new Workload() {
+            private final Tariff tariff = Tariff.standard(ZoneId.systemDefault());
+            private final long start = System.currentTimeMillis();
+            
+            @Override
+            void setup(int spots, int threads) {
+            }
+            
+            // Stays from minutes to about ten days, so every branch of the quote is taken
+            @Override
+            void run(int thread, int iteration) {
+                long entry = start + (iteration & 0xFFFF) * 37_000L;
+                tariff.quoteCents(TYPES[iteration % 3], entry, entry + (iteration & 0x3FF) * 851_000L);
+            }
+        });
+        return workloads;
+    }
+    
+    private static final class Result {
+        final String operation;
+        final int spots;
+        final int threads;
+        final double opsPerSecond;
+        final long p99Nanos;
+        final double bytesPerOp;
+        
+        Result(String operation, int spots, int threads, double opsPerSecond, long p99Nanos, double bytesPerOp) {
+            this.operation = operation;
+            this.spots = spots;
+            this.threads = threads;
+            this.opsPerSecond = opsPerSecond;
+            this.p99Nanos = p99Nanos;
+            this.bytesPerOp = bytesPerOp;
+        }
+        
+        String key() {
+            return operation + "," + spots + "," + threads;
+        }
+        
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%.0f,%d,%.1f", key(), opsPerSecond, p99Nanos, bytesPerOp);
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Map<String, Workload> available = workloads();
+        String[] operations = options.getOrDefault("ops", String.join(",", available.keySet())).split(",");
+        int[] spotCounts = parseInts(options.getOrDefault("spots", "20,1000,50000,500000"));
+        int[] threadCounts = parseInts(options.getOrDefault("threads", "1,4,16,64"));
+        double warmupSeconds = Double.parseDouble(options.getOrDefault("warmup", "1"));
+        double measureSeconds = Double.parseDouble(options.getOrDefault("measure", "3"));
+        
+        List<Result> results = new ArrayList<>();
+        System.out.println("operation,spots,threads,ops_per_sec,p99_ns,bytes_per_op");
+        for (String operation : operations) {
+            Workload workload = available.get(operation);
+            if (workload == null) {
+                throw new IllegalArgumentException("Unknown operation " + operation + ", expected one of " + available.keySet());
+            }
+            for (int spots : spotCounts) {
+                for (int threads : threadCounts) {
+                    workload.setup(spots, threads);
+                    measure(workload, operation, spots, threads, warmupSeconds); // Warmup, result discarded
+                    Result result = measure(workload, operation, spots, threads, measureSeconds);
+                    results.add(result);
+                    System.out.println(result.toCsv());
+                }
+            }
+        }
+        
+        if (options.containsKey("out")) {
+            List<String> lines = new ArrayList<>();
+            lines.add("operation,spots,threads,ops_per_sec,p99_ns,bytes_per_op");
+            for (Result result : results) {
+                lines.add(result.toCsv());
+            }
+            Files.write(Paths.get(options.get("out")), lines, StandardCharsets.UTF_8);
+        }
+        if (options.containsKey("baseline")) {
+            double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.10"));
+            if (!checkBaseline(Paths.get(options.get("baseline")), results, tolerance)) {
+                System.exit(1);
+            }
+        }
+    }
+    
+    private static Result measure(Workload workload, String operation, int spots, int threads, double seconds) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] operations = new long[threads];
+        long[] allocatedBytes = new long[threads];
+        LatencyHistogram[] histograms = new LatencyHistogram[threads];
+        
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            histograms[t] = new LatencyHistogram();
+            Thread worker = new Thread(() -> {
+                LatencyHistogram histogram = histograms[thread];
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                int iteration = 0;
+                int untilSample = 1;
+                while (running.get()) {
+                    // Check the stop flag only every 256 ops to keep it off the measured path
+                    for (int k = 0; k < 256; k++, iteration++) {
+                        if (--untilSample == 0) {
+                            untilSample = LATENCY_SAMPLE_STRIDE;
+                            long begin = System.nanoTime();
+                            workload.run(thread, iteration);
+                            histogram.record(System.nanoTime() - begin);
+                        } else {
+                            workload.run(thread, iteration);
+                        }
+                    }
+                }
+                allocatedBytes[thread] = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+                operations[thread] = Integer.toUnsignedLong(iteration);
+                done.countDown();
+            }, "bench-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        
+        start.await();
+        long begin = System.nanoTime();
+        Thread.sleep((long) (seconds * 1000));
+        running.set(false);
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        
+        long totalOperations = 0;
+        long totalBytes = 0;
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int t = 0; t < threads; t++) {
+            totalOperations += operations[t];
+            totalBytes += allocatedBytes[t];
+            merged.add(histograms[t]);
+        }
+        long p99Nanos = LatencyHistogram.quantileNanos(merged.snapshot(), 0.99);
+        return new Result(operation, spots, threads, totalOperations / elapsed, p99Nanos,
+            totalOperations == 0 ? 0 : (double) totalBytes / totalOperations);
+    }
+    
+    private static boolean checkBaseline(Path baselineFile, List<Result> results, double tolerance) throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(baselineFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length >= 4 && !fields[0].equals("operation")) {
+                baseline.put(fields[0] + "," + fields[1] + "," + fields[2], Double.parseDouble(fields[3]));
+            }
+        }
+        boolean passed = true;
+        for (Result result : results) {
+            Double previous = baseline.get(result.key());
+            if (previous != null && result.opsPerSecond < previous * (1 - tolerance)) {
+                System.out.printf(Locale.ROOT, "REGRESSION %s: %.0f ops/s vs baseline %.0f%n",
+                    result.key(), result.opsPerSecond, previous);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+    
+    // Parks plates until count spots are taken and returns them
+    private static Workload findSpot(IntFunction<SpotAllocator> allocatorFactory) {
+        return new Workload() {
+            private SpotAllocator allocator;
+            
+            @Override
+            void setup(int spots, int threads) {
+                allocator = allocatorFactory.apply(spots);
+                for (int i = 0; i < spots / 2; i++) {
+                    allocator.claim(i * 2);
+                }
+            }
+            
+            @Override
+            void run(int thread, int iteration) {
+                int spot = allocator.acquire();
+                if (spot != -1) {
+                    allocator.release(spot);
+                }
+            }
+        };
+    }
+    
+    private static String[] prefill(ParkingEngine engine, int count) {
+        String[] parked = new String[Math.max(1, count)];
+        for (int i = 0; i < count; i++) {
+            parked[i] = "PF" + i;
+            engine.parkVehicle(parked[i], TYPES[i % 3]);
+        }
+        if (count == 0) {
+            parked[0] = "PF0"; // Lookups on an empty lot simply miss
+        }
+        return parked;
+    }
+    
+    private static String[][] plates(int threads, String prefix) {
+        String[][] plates = new String[threads][PLATES_PER_THREAD];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < PLATES_PER_THREAD; i++) {
+                plates[t][i] = prefix + t + "X" + i;
+            }
+        }
+        return plates;
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+    
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,666 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UI-free parking core. Safe to call from many entry/exit lanes at once:
+ * operations on the same plate are serialized by a striped lock, and free
+ * spots are claimed through a lock-free allocator, so different plates never
+ * queue behind one global lock. A plate index keeps lookups and removals O(1),
+ * and a search index finds plates from a prefix or a misread.
+ * By default spots are pooled per bay kind, so a vehicle only searches the
+ * bays its type fits. Advance bookings live in a ReservationBook, which
+ * claims a booked spot in the allocator shortly before the booking starts so
+ * walk-ins are never handed it.
+ *
+ * State is compact: occupancy is the allocator's bitset and per-spot vehicle
+ * data lives in a SpotStore, either on the heap or in a memory-mapped file.
+ * Every park and remove is also published to a ChangeFeed, which the UI and
+ * display boards follow on their own threads.
+ *
+ * With a journal attached, every park/remove is logged under the plate's lock
+ * and the call returns only once the record is durable; the wait happens
+ * outside the lock so lanes share fsyncs through the journal's group commit.
+ */
+public class ParkingEngine {
+    public static final int MAX_PLATE_LENGTH = 32;
+    
+    private static final int LOCK_STRIPES = 64; // Power of two, see lockFor()
+    
+    private final LotLayout layout;
+    private final SpotStore spotStore;
+    private final Object[] plateLocks;
+    private final PlateIndex plateIndex;
+    private final PlateSearchIndex plateSearch;
+    private final SpotAllocator spotAllocator;
+    private final ParkingMetrics metrics;
+    private final ReservationBook reservations;
+    private final OccupancySnapshots occupancy;
+    private final ChangeFeed changes = new ChangeFeed(ChangeFeed.DEFAULT_BUFFER_SIZE);
+    private OccupancySnapshots.Batch openBatch; // Only set while a batch holds every stripe
+    private volatile ParkingJournal journal;
+    private volatile SessionArchive archive;
+    private volatile PlateFormat plateFormat = PlateFormat.DEFAULT;
+    private volatile Tariff tariff = Tariff.standard(ZoneId.systemDefault());
+    private volatile Clock clock = Clock.systemUTC();
+    
+    // Work run while no park/remove is in flight, e.g. cutting a snapshot
+    public interface QuiescedTask<T> {
+        T run() throws IOException;
+    }
+    
+    public ParkingEngine(int capacity) {
+        this(LotLayout.singleLevel(capacity));
+    }
+    
+    public ParkingEngine(LotLayout layout) {
+        this(layout, new SpotPools(layout));
+    }
+    
+    // The allocator decides which free spot a vehicle gets, e.g. nearest to the entrance
+    public ParkingEngine(LotLayout layout, SpotAllocator spotAllocator) {
+        this(layout, spotAllocator, new HeapSpotStore(layout.getCapacity()));
+    }
+    
+    // A store that already holds vehicles (e.g. a mapped file after restart) is indexed on startup
+    public ParkingEngine(LotLayout layout, SpotAllocator spotAllocator, SpotStore spotStore) {
+        int capacity = layout.getCapacity();
+        if (spotAllocator.capacity() != capacity) {
+            throw new IllegalArgumentException("Allocator covers " + spotAllocator.capacity() + " spots but the lot has " + capacity);
+        }
+        if (spotStore.capacity() != capacity) {
+            throw new IllegalArgumentException("Spot store covers " + spotStore.capacity() + " spots but the lot has " + capacity);
+        }
+        this.layout = layout;
+        this.spotAllocator = spotAllocator;
+        this.spotStore = spotStore;
+        plateIndex = new PlateIndex(capacity);
+        plateSearch = new PlateSearchIndex(capacity);
+        metrics = new ParkingMetrics(layout);
+        reservations = new ReservationBook(layout, spotAllocator);
+        plateLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < plateLocks.length; i++) {
+            plateLocks[i] = new Object();
+        }
+        
+        for (int i = 0; i < capacity; i++) {
+            if (spotStore.isOccupied(i)) {
+                Vehicle vehicle = spotStore.get(i);
+                if (!spotAllocator.claim(i) || !plateIndex.put(vehicle.getNumber(), i)) {
+                    throw new IllegalStateException("Spot store lists " + vehicle.getNumber() + " twice or in a taken spot");
+                }
+                plateSearch.add(vehicle.getNumber(), i);
+                metrics.spotOccupied(i, vehicle);
+            }
+        }
+        occupancy = new OccupancySnapshots(spotStore);
+    }
+    
+    public ParkingResult parkVehicle(String rawNumber, VehicleType vehicleType) {
+        return parkVehicle(rawNumber, vehicleType, -1);
+    }
+    
+    // gateIndex is the entry gate in the layout's getGates(), so the allocator can pick a spot near it
+    public ParkingResult parkVehicle(String rawNumber, VehicleType vehicleType, int gateIndex) {
+        long start = metrics.startTimer();
+        ParkingResult result = park(rawNumber, vehicleType, gateIndex);
+        metrics.recordPark(result, start);
+        return result;
+    }
+    
+    public ParkingResult removeVehicle(String rawNumber) {
+        long start = metrics.startTimer();
+        ParkingResult result = remove(rawNumber);
+        metrics.recordRemove(result, start);
+        return result;
+    }
+    
+    /**
+     * Applies many parks and removes as one unit: plates are validated in one
+     * pass before any lock is taken, then every entry is applied in order
+     * while all plate stripes are held, so no lane sees the batch half done.
+     * The batch is journaled as one append and awaited once. Entries succeed
+     * or fail individually; results are in entry order. If the journal
+     * fails, every entry is undone before the UncheckedIOException is thrown,
+     * so a retry starts from the same lot.
+     */
+    public ParkingResult[] applyBatch(ParkingBatch batch) {
+        reservations.poll(clock.millis());
+        String[] plates = new String[batch.size()];
+        for (int i = 0; i < plates.length; i++) {
+            plates[i] = plateFormat.normalize(batch.getPlate(i));
+        }
+        
+        ParkingResult[] results = new ParkingResult[plates.length];
+        long sequence;
+        try {
+            sequence = runQuiesced(() -> {
+                // Readers of occupancy snapshots see the whole batch or none of it
+                openBatch = new OccupancySnapshots.Batch();
+                try {
+                    // No hold starts or ends meanwhile, so an undo can claim back every spot the batch freed
+                    synchronized (reservations) {
+                        return applyLocked(batch, plates, results);
+                    }
+                } finally {
+                    occupancy.record(openBatch);
+                    openBatch = null;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // applyLocked reports journal failures unchecked, so this cannot happen
+        }
+        awaitDurable(sequence);
+        for (ParkingResult result : results) {
+            metrics.recordOutcome(result);
+        }
+        return results;
+    }
+    
+    /**
+     * Books a spot this type fits for a future window; null when every such
+     * spot is booked at some point in it. Throws IllegalArgumentException for
+     * an invalid plate, an empty or past window, or an overlapping booking of
+     * the same plate. The vehicle parks in its spot by arriving during the
+     * window (or up to an hour before) and calling parkVehicle as usual.
+     */
+    public ReservationBook.Reservation reserve(String rawNumber, VehicleType vehicleType, long fromMillis, long toMillis) {
+        long now = clock.millis();
+        reservations.poll(now);
+        return reservations.book(plateForBooking(rawNumber), vehicleType, fromMillis, toMillis, now);
+    }
+    
+    // Books one particular spot; null when it is booked during the window
+    public ReservationBook.Reservation reserveSpot(String rawNumber, VehicleType vehicleType, int spotIndex, long fromMillis, long toMillis) {
+        long now = clock.millis();
+        reservations.poll(now);
+        return reservations.bookSpot(plateForBooking(rawNumber), vehicleType, spotIndex, fromMillis, toMillis, now);
+    }
+    
+    public boolean cancelReservation(long reservationId) {
+        return reservations.cancel(reservationId);
+    }
+    
+    public ReservationBook.Reservation getReservation(long reservationId) {
+        reservations.poll(clock.millis());
+        return reservations.get(reservationId);
+    }
+    
+    // Spots this type could book for the whole window, e.g. "car bays free 18:00 to 22:00"
+    public int getAvailableCount(VehicleType vehicleType, long fromMillis, long toMillis) {
+        reservations.poll(clock.millis());
+        return reservations.countAvailable(vehicleType, fromMillis, toMillis);
+    }
+    
+    public ParkingMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public void attachJournal(ParkingJournal journal) {
+        this.journal = journal;
+    }
+    
+    // Applies to plates entered from now on; vehicles already parked keep their plates
+    public void setPlateFormat(PlateFormat plateFormat) {
+        this.plateFormat = plateFormat;
+    }
+    
+    public PlateFormat getPlateFormat() {
+        return plateFormat;
+    }
+    
+    // Prices vehicles that leave from now on, including ones that entered under the previous tariff
+    public void setTariff(Tariff tariff) {
+        this.tariff = tariff;
+    }
+    
+    public Tariff getTariff() {
+        return tariff;
+    }
+    
+    // Entry and exit times, fees and booking holds all follow this clock, e.g. a simulated one
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+    
+    public Clock getClock() {
+        return clock;
+    }
+    
+    // Canonical form of a plate typed by a user, or null if it cannot be a valid plate
+    public String normalizePlate(String vehicleNumber) {
+        return plateFormat.normalize(vehicleNumber);
+    }
+    
+    // Recovery only: puts a saved vehicle, its plate already canonical, back in its spot without journaling it again
+    public void restoreVehicle(int spotIndex, Vehicle vehicle) {
+        synchronized (lockFor(vehicle.getNumber())) {
+            if (plateIndex.contains(vehicle.getNumber()) || !spotAllocator.claim(spotIndex)) {
+                throw new IllegalStateException("Cannot restore " + vehicle.getNumber() + " to spot " + (spotIndex + 1));
+            }
+            occupy(vehicle, spotIndex);
+        }
+    }
+    
+    // Recovery only: replays a removal without journaling it again
+    public void restoreRemoval(int spotIndex, String vehicleNumber) {
+        synchronized (lockFor(vehicleNumber)) {
+            if (plateIndex.get(vehicleNumber) != spotIndex) {
+                throw new IllegalStateException("Cannot restore removal of " + vehicleNumber + " from spot " + (spotIndex + 1));
+            }
+            vacate(vehicleNumber, spotIndex);
+        }
+    }
+    
+    // Every later removal is recorded in the archive as a finished session
+    public void attachArchive(SessionArchive archive) {
+        this.archive = archive;
+    }
+    
+    // Null unless one was attached, e.g. by ParkingPersistence
+    public SessionArchive getArchive() {
+        return archive;
+    }
+    
+    // Holds every plate lock, so the task sees a state no lane is halfway through changing
+    public <T> T runQuiesced(QuiescedTask<T> task) throws IOException {
+        return runQuiesced(0, task);
+    }
+    
+    public Vehicle findVehicle(String vehicleNumber) {
+        int vehicleIndex = findVehicleIndex(vehicleNumber);
+        return vehicleIndex == -1 ? null : spotStore.get(vehicleIndex);
+    }
+    
+    public boolean checkVehicleExists(String vehicleNumber) {
+        return findVehicleIndex(vehicleNumber) != -1;
+    }
+    
+    public ParkingSpot findSpot(String vehicleNumber) {
+        int spotIndex = findVehicleIndex(vehicleNumber);
+        return spotIndex == -1 ? null : getSpot(spotIndex);
+    }
+    
+    // Parked vehicles whose plate starts with the prefix, in plate order
+    public List<ParkingSpot> findSpotsByPlatePrefix(String prefix, int limit) {
+        return spotsOf(plateSearch.withPrefix(prefix, limit));
+    }
+    
+    /**
+     * Parked vehicles whose plate is within maxDistance edits of a plate that
+     * may be misread, closest first; for an exit camera whose exact plate is
+     * not parked.
+     */
+    public List<ParkingSpot> findSimilarPlates(String misread, int maxDistance, int limit) {
+        List<PlateSearchIndex.Match> matches = plateSearch.closest(misread, maxDistance, limit);
+        List<String> plates = new ArrayList<>(matches.size());
+        for (PlateSearchIndex.Match match : matches) {
+            plates.add(match.getPlate());
+        }
+        return spotsOf(plates);
+    }
+    
+    public int getParkedCount() {
+        return plateIndex.size();
+    }
+    
+    public int getFreeCount() {
+        return spotAllocator.freeCount();
+    }
+    
+    // Spots this type could be given right now, kept up to date by the allocator rather than counted
+    public int getFreeCount(VehicleType vehicleType) {
+        return spotAllocator.freeCount(vehicleType);
+    }
+    
+    public int getCapacity() {
+        return spotStore.capacity();
+    }
+    
+    public LotLayout getLayout() {
+        return layout;
+    }
+    
+    // Every park and remove from now on, for subscribers that follow the lot on their own threads
+    public ChangeFeed getChangeFeed() {
+        return changes;
+    }
+    
+    /**
+     * Every spot as of one moment, taken without the engine's locks. Prefer it to
+     * per-spot getters when reading many spots, e.g. to paint the lot; the
+     * same snapshot is handed out until something changes.
+     */
+    public OccupancySnapshots.Snapshot getOccupancySnapshot() {
+        return occupancy.latest();
+    }
+    
+    public boolean isOccupied(int spotIndex) {
+        return spotStore.isOccupied(spotIndex);
+    }
+    
+    public Vehicle getParkedVehicle(int spotIndex) {
+        return spotStore.get(spotIndex);
+    }
+    
+    // Builds a view of the spot as it is right now; later parks/removes do not change it
+    public ParkingSpot getSpot(int spotIndex) {
+        return new ParkingSpot(spotIndex + 1, layout.zoneOf(spotIndex), spotStore.get(spotIndex));
+    }
+    
+    // Basic validation - alphanumeric, 2 to MAX_PLATE_LENGTH characters (fits a spot store record)
+    public static boolean validateVehicleNumber(String vehicleNumber) {
+        return PlateFormat.DEFAULT.isValid(vehicleNumber);
+    }
+    
+    private ParkingResult park(String rawNumber, VehicleType vehicleType, int gateIndex) {
+        // Validate and canonicalize in one scan; clean plates come back as the same instance
+        String vehicleNumber = plateFormat.normalize(rawNumber);
+        if (vehicleNumber == null) {
+            return ParkingResult.failure(ParkingResult.Status.INVALID_NUMBER);
+        }
+        
+        long now = clock.millis();
+        reservations.poll(now); // Holds that start now are claimed before acquire() can hand their spots out
+        Vehicle vehicle = newVehicle(vehicleNumber, vehicleType, now);
+        
+        long sequence;
+        ParkingResult result;
+        synchronized (lockFor(vehicleNumber)) {
+            // Same plate always maps to the same stripe, so this check cannot race
+            if (plateIndex.contains(vehicleNumber)) {
+                return ParkingResult.failure(ParkingResult.Status.ALREADY_PARKED);
+            }
+            
+            ReservationBook.Reservation hold = reservations.takeHold(vehicleNumber, vehicleType);
+            int spotIndex = acquireSpot(hold, vehicleType, gateIndex);
+            if (spotIndex == -1) {
+                return ParkingResult.failure(ParkingResult.Status.NO_SPOT_AVAILABLE);
+            }
+            
+            sequence = parkInSpot(spotIndex, vehicle, hold);
+            result = ParkingResult.parked(getSpot(spotIndex), vehicle);
+        }
+        awaitDurable(sequence);
+        return result;
+    }
+    
+    private ParkingResult remove(String rawNumber) {
+        String vehicleNumber = plateFormat.normalize(rawNumber);
+        if (vehicleNumber == null) {
+            return ParkingResult.failure(ParkingResult.Status.INVALID_NUMBER);
+        }
+        
+        long sequence;
+        ParkingResult result;
+        synchronized (lockFor(vehicleNumber)) {
+            int spotIndex = plateIndex.get(vehicleNumber);
+            if (spotIndex == -1) {
+                return ParkingResult.failure(ParkingResult.Status.NOT_PARKED);
+            }
+            
+            Vehicle parked = spotStore.get(spotIndex);
+            long exitTime = clock.millis();
+            long feeCents = tariff.quoteCents(parked.getType(), parked.getEntryTime(), exitTime);
+            sequence = removeFromSpot(spotIndex, parked, exitTime, feeCents);
+            result = ParkingResult.removed(new ParkingSpot(spotIndex + 1, layout.zoneOf(spotIndex), parked), parked, feeCents);
+        }
+        awaitDurable(sequence);
+        return result;
+    }
+    
+    // Caller holds every stripe and the reservation book; returns the last journal sequence written
+    private long applyLocked(ParkingBatch batch, String[] plates, ParkingResult[] results) {
+        ParkingJournal.Batch records = new ParkingJournal.Batch();
+        ReservationBook.Reservation[] holds = new ReservationBook.Reservation[plates.length];
+        for (int i = 0; i < plates.length; i++) {
+            String plate = plates[i];
+            if (plate == null) {
+                results[i] = ParkingResult.failure(ParkingResult.Status.INVALID_NUMBER);
+            } else if (batch.getOperation(i) == ParkingBatch.Operation.PARK) {
+                VehicleType type = batch.getType(i);
+                if (plateIndex.contains(plate)) {
+                    results[i] = ParkingResult.failure(ParkingResult.Status.ALREADY_PARKED);
+                    continue;
+                }
+                holds[i] = reservations.takeHold(plate, type);
+                int spotIndex = acquireSpot(holds[i], type, -1);
+                if (spotIndex == -1) {
+                    results[i] = ParkingResult.failure(ParkingResult.Status.NO_SPOT_AVAILABLE);
+                    continue;
+                }
+                Vehicle vehicle = newVehicle(plate, type, batch.getTimeMillis(i));
+                occupy(vehicle, spotIndex);
+                records.addPark(spotIndex, vehicle);
+                results[i] = ParkingResult.parked(getSpot(spotIndex), vehicle);
+            } else {
+                int spotIndex = plateIndex.get(plate);
+                if (spotIndex == -1) {
+                    results[i] = ParkingResult.failure(ParkingResult.Status.NOT_PARKED);
+                    continue;
+                }
+                Vehicle parked = spotStore.get(spotIndex);
+                long feeCents = tariff.quoteCents(parked.getType(), parked.getEntryTime(), batch.getTimeMillis(i));
+                vacate(plate, spotIndex);
+                records.addRemove(spotIndex, parked, batch.getTimeMillis(i), feeCents);
+                results[i] = ParkingResult.removed(new ParkingSpot(spotIndex + 1, layout.zoneOf(spotIndex), parked), parked, feeCents);
+            }
+        }
+        
+        long sequence;
+        try {
+            sequence = journalBatch(records);
+        } catch (RuntimeException e) {
+            undoLocked(batch, results, holds);
+            throw e;
+        }
+        SessionArchive current = archive;
+        if (current != null) {
+            for (int i = 0; i < results.length; i++) {
+                ParkingResult result = results[i];
+                if (result.isSuccess() && batch.getOperation(i) == ParkingBatch.Operation.REMOVE) {
+                    Vehicle parked = result.getVehicle();
+                    current.append(parked.getNumber(), parked.getType(), result.getSpotNumber() - 1, parked.getEntryTime(),
+                        batch.getTimeMillis(i), result.getFeeCents());
+                }
+            }
+        }
+        return sequence;
+    }
+    
+    // Reverts a batch that could not be journaled, newest entry first, so a spot reused within the batch is freed before it is refilled.
+    // Change feed subscribers see the undo as ordinary parks and removes.
+    private void undoLocked(ParkingBatch batch, ParkingResult[] results, ReservationBook.Reservation[] holds) {
+        for (int i = results.length - 1; i >= 0; i--) {
+            ParkingResult result = results[i];
+            if (!result.isSuccess()) {
+                continue;
+            }
+            int spotIndex = result.getSpotNumber() - 1;
+            Vehicle vehicle = result.getVehicle();
+            if (batch.getOperation(i) == ParkingBatch.Operation.PARK) {
+                vacate(vehicle.getNumber(), spotIndex);
+                if (holds[i] != null) {
+                    claimBack(spotIndex);
+                    reservations.returnHold(holds[i]);
+                }
+            } else {
+                claimBack(spotIndex);
+                occupy(vehicle, spotIndex);
+            }
+        }
+    }
+    
+    private void claimBack(int spotIndex) {
+        if (!spotAllocator.claim(spotIndex)) {
+            throw new IllegalStateException("Spot " + (spotIndex + 1) + " was handed out while a batch was undone");
+        }
+    }
+    
+    // hold is the plate's taken reservation, if any: a booked vehicle gets the spot held for it, which is already claimed
+    private int acquireSpot(ReservationBook.Reservation hold, VehicleType type, int gateIndex) {
+        if (hold != null) {
+            return hold.getSpotIndex();
+        }
+        return gateIndex == -1 ? spotAllocator.acquire(type) : spotAllocator.acquireNear(type, gateIndex);
+    }
+    
+    private Vehicle newVehicle(String plate, VehicleType type, long entryTime) {
+        return new Vehicle(plate, type, tariff.getFirstHourCents(type), entryTime);
+    }
+    
+    // Caller holds the plate's stripe and has acquired the spot; gives the spot (or the booking's hold on it) back if journaling fails
+    private long parkInSpot(int spotIndex, Vehicle vehicle, ReservationBook.Reservation hold) {
+        long sequence;
+        try {
+            sequence = journalPark(spotIndex, vehicle);
+        } catch (RuntimeException e) {
+            if (hold != null) {
+                reservations.returnHold(hold);
+            } else {
+                spotAllocator.release(spotIndex);
+            }
+            throw e;
+        }
+        occupy(vehicle, spotIndex);
+        return sequence;
+    }
+    
+    // Archived under the plate's lock too, so a quiesced engine's archive matches its journal exactly
+    private long removeFromSpot(int spotIndex, Vehicle parked, long exitTime, long feeCents) {
+        long sequence = journalRemove(spotIndex, parked, exitTime, feeCents);
+        vacate(parked.getNumber(), spotIndex);
+        SessionArchive current = archive;
+        if (current != null) {
+            current.append(parked.getNumber(), parked.getType(), spotIndex, parked.getEntryTime(), exitTime, feeCents);
+        }
+        return sequence;
+    }
+    
+    // Skips plates that left between the search and now
+    private List<ParkingSpot> spotsOf(List<String> plates) {
+        List<ParkingSpot> spots = new ArrayList<>(plates.size());
+        for (String plate : plates) {
+            int spotIndex = plateIndex.get(plate);
+            ParkingSpot spot = spotIndex == -1 ? null : getSpot(spotIndex);
+            if (spot != null && spot.getParkedVehicle() != null && spot.getParkedVehicle().getNumber().equals(plate)) {
+                spots.add(spot);
+            }
+        }
+        return spots;
+    }
+    
+    private String plateForBooking(String rawNumber) {
+        String vehicleNumber = plateFormat.normalize(rawNumber);
+        if (vehicleNumber == null) {
+            throw new IllegalArgumentException("Invalid plate " + rawNumber);
+        }
+        return vehicleNumber;
+    }
+    
+    // Lookups accept what a user typed ("ab-12"), but only scan the index for a plate that can exist
+    private int findVehicleIndex(String vehicleNumber) {
+        String plate = plateFormat.normalize(vehicleNumber);
+        if (plate == null) {
+            plate = PlateFormat.DEFAULT.normalize(vehicleNumber); // Parked under an earlier format
+        }
+        return plate == null ? -1 : plateIndex.get(plate);
+    }
+    
+    // Both mutators run under the plate's stripe lock, keeping the index in step with the table.
+    // The spot was handed out by the allocator, so nobody else can be writing its slot.
+    private void occupy(Vehicle vehicle, int spotIndex) {
+        if (spotStore.isOccupied(spotIndex)) {
+            throw new IllegalStateException("Allocator handed out occupied spot " + (spotIndex + 1));
+        }
+        spotStore.put(spotIndex, vehicle);
+        if (!plateIndex.put(vehicle.getNumber(), spotIndex)) {
+            throw new IllegalStateException("Vehicle " + vehicle.getNumber() + " indexed twice");
+        }
+        plateSearch.add(vehicle.getNumber(), spotIndex);
+        metrics.spotOccupied(spotIndex, vehicle);
+        recordOccupancy(spotIndex, vehicle);
+        changes.publish(ChangeFeed.Kind.PARK, spotIndex, vehicle);
+    }
+    
+    private Vehicle vacate(String vehicleNumber, int spotIndex) {
+        Vehicle vehicle = spotStore.clear(spotIndex);
+        if (vehicle == null) {
+            // This should never happen if our data is consistent
+            throw new IllegalStateException("Vehicle " + vehicleNumber + " found in system but not in its parking spot");
+        }
+        plateIndex.remove(vehicleNumber);
+        plateSearch.remove(spotIndex);
+        recordOccupancy(spotIndex, null); // Before release, so the next occupant's change comes after this one
+        changes.publish(ChangeFeed.Kind.REMOVE, spotIndex, vehicle);
+        spotAllocator.release(spotIndex);
+        metrics.spotVacated(spotIndex, vehicle);
+        return vehicle;
+    }
+    
+    private void recordOccupancy(int spotIndex, Vehicle vehicle) {
+        OccupancySnapshots.Batch batch = openBatch;
+        if (batch != null) {
+            batch.add(spotIndex, vehicle);
+        } else {
+            occupancy.record(spotIndex, vehicle);
+        }
+    }
+    
+    private <T> T runQuiesced(int stripe, QuiescedTask<T> task) throws IOException {
+        if (stripe == plateLocks.length) {
+            return task.run();
+        }
+        synchronized (plateLocks[stripe]) {
+            return runQuiesced(stripe + 1, task);
+        }
+    }
+    
+    // Journal helpers return 0 when no journal is attached
+    private long journalPark(int spotIndex, Vehicle vehicle) {
+        ParkingJournal current = journal;
+        try {
+            return current == null ? 0 : current.appendPark(spotIndex, vehicle);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private long journalRemove(int spotIndex, Vehicle vehicle, long exitTime, long feeCents) {
+        ParkingJournal current = journal;
+        try {
+            return current == null ? 0 : current.appendRemove(spotIndex, vehicle, exitTime, feeCents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private long journalBatch(ParkingJournal.Batch records) {
+        ParkingJournal current = journal;
+        try {
+            return current == null || records.size() == 0 ? 0 : current.append(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void awaitDurable(long sequence) {
+        ParkingJournal current = journal;
+        if (sequence == 0 || current == null) {
+            return;
+        }
+        try {
+            current.awaitDurable(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private Object lockFor(String vehicleNumber) {
+        int h = vehicleNumber.hashCode();
+        return plateLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+}
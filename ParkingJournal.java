@@ -0,0 +1,418 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of park and remove events.
+ *
+ * Lanes append records into a shared buffer and get a sequence number back;
+ * a single flusher thread writes whatever has accumulated and fsyncs it in
+ * one go (group commit), then wakes every lane whose record is now durable.
+ * While one batch is being synced the next one fills up, so the fsync cost is
+ * shared by every lane that arrived in the meantime.
+ *
+ * The log is split into segments named journal-&lt;first sequence&gt;.log. A
+ * snapshot rolls to a new segment so older ones can be deleted.
+ *
+ * Record layout: int payload length, int CRC32 of payload, then the payload:
+ * byte type, long sequence, long time millis, int spot index, long amount in
+ * cents, short + bytes plate, short + bytes vehicle type. A PARK record's
+ * time is the vehicle's entry time; a REMOVE record's time is the exit time
+ * and its amount the fee charged. Every record of an appended Batch but the last has
+ * BATCH_CONTINUES set in its type byte; replay applies a batch only once its
+ * last record is read, so a crash mid-batch loses the whole batch.
+ */
+public class ParkingJournal implements Closeable {
+    public static final byte PARK = 1;
+    public static final byte REMOVE = 2; // Carries the fee charged at exit
+    private static final byte BATCH_CONTINUES = 0x40;
+    
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 1 + 8 + 8 + 4 + 8 + 2 + 2;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    
+    public static final class Record {
+        private final byte type;
+        private final long sequence;
+        private final long timeMillis;
+        private final int spotIndex;
+        private final Vehicle vehicle;
+        
+        Record(byte type, long sequence, long timeMillis, int spotIndex, Vehicle vehicle) {
+            this.type = type;
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.spotIndex = spotIndex;
+            this.vehicle = vehicle;
+        }
+        
+        public byte getType() { return type; }
+        public long getSequence() { return sequence; }
+        public long getTimeMillis() { return timeMillis; }
+        public int getSpotIndex() { return spotIndex; }
+        public Vehicle getVehicle() { return vehicle; }
+    }
+    
+    // Records collected by one writer and appended as a unit, see append(Batch)
+    public static final class Batch {
+        private final List<Record> records = new ArrayList<>();
+        
+        public void addPark(int spotIndex, Vehicle vehicle) {
+            records.add(new Record(PARK, 0, vehicle.getEntryTime(), spotIndex, vehicle));
+        }
+        
+        // Held like a replayed REMOVE record: the vehicle's amount is the fee charged
+        public void addRemove(int spotIndex, Vehicle vehicle, long exitTimeMillis, long feeCents) {
+            Vehicle charged = new Vehicle(vehicle.getNumber(), vehicle.getType(), feeCents, exitTimeMillis);
+            records.add(new Record(REMOVE, 0, exitTimeMillis, spotIndex, charged));
+        }
+        
+        public int size() {
+            return records.size();
+        }
+    }
+    
+    private final Path directory;
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32(); // Guarded by this
+    
+    // All guarded by this
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long lastAppendedSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+    
+    private ParkingJournal(Path directory, long lastSequence) throws IOException {
+        this.directory = directory;
+        this.lastAppendedSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        this.channel = openSegment(lastSequence + 1);
+        this.flusher = new Thread(this::flushLoop, "parking-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+    
+    // Opens the journal for appending after recovery; lastSequence is the last record already on disk
+    public static ParkingJournal open(Path directory, long lastSequence) throws IOException {
+        Files.createDirectories(directory);
+        return new ParkingJournal(directory, lastSequence);
+    }
+    
+    /**
+     * Replays every intact record with a sequence above afterSequence, oldest
+     * first, and returns the last sequence seen. A torn record at the end of
+     * the newest segment (crash mid-write) is cut off so appends can resume.
+     */
+    public static long replay(Path directory, long afterSequence, Consumer<Record> consumer) throws IOException {
+        long lastSequence = afterSequence;
+        if (!Files.isDirectory(directory)) {
+            return lastSequence;
+        }
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+                while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                    // Read the whole segment
+                }
+                buffer.flip();
+                
+                CRC32 check = new CRC32();
+                List<Record> batch = new ArrayList<>(); // Records of a batch whose last record is not read yet
+                int batchStart = 0;
+                while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    int expectedCrc = buffer.getInt();
+                    if (length < FIXED_PAYLOAD_BYTES || length > buffer.remaining()) {
+                        buffer.position(start);
+                        break;
+                    }
+                    check.reset();
+                    check.update(buffer.array(), buffer.position(), length);
+                    if ((int) check.getValue() != expectedCrc) {
+                        buffer.position(start);
+                        break;
+                    }
+                    boolean continues = (buffer.get(buffer.position()) & BATCH_CONTINUES) != 0;
+                    Record record = decode(buffer);
+                    if (batch.isEmpty()) {
+                        batchStart = start;
+                    }
+                    batch.add(record);
+                    if (continues) {
+                        continue;
+                    }
+                    for (Record applied : batch) {
+                        if (applied.getSequence() > lastSequence) {
+                            consumer.accept(applied);
+                            lastSequence = applied.getSequence();
+                        }
+                    }
+                    batch.clear();
+                }
+                if (!batch.isEmpty()) {
+                    buffer.position(batchStart); // Cut off like a torn record
+                }
+                
+                if (buffer.hasRemaining()) {
+                    if (i != segments.size() - 1) {
+                        throw new IOException("Corrupt record in " + segment + " at byte " + buffer.position());
+                    }
+                    in.truncate(buffer.position());
+                    in.force(true);
+                }
+            }
+        }
+        return lastSequence;
+    }
+    
+    public long appendPark(int spotIndex, Vehicle vehicle) throws IOException {
+        return append(PARK, spotIndex, vehicle, vehicle.getEntryTime(), vehicle.getAmountCents());
+    }
+    
+    public long appendRemove(int spotIndex, Vehicle vehicle, long exitTimeMillis, long feeCents) throws IOException {
+        return append(REMOVE, spotIndex, vehicle, exitTimeMillis, feeCents);
+    }
+    
+    /**
+     * Appends every record of the batch or, if the journal has failed or is
+     * closed, none of them. The records go into the same group commit, and
+     * the last one's sequence is returned (0 for an empty batch).
+     */
+    public synchronized long append(Batch batch) throws IOException {
+        checkWritable();
+        long sequence = 0;
+        for (int i = 0; i < batch.records.size(); i++) {
+            Record record = batch.records.get(i);
+            byte type = i < batch.records.size() - 1 ? (byte) (record.type | BATCH_CONTINUES) : record.type;
+            sequence = append(type, record.spotIndex, record.vehicle, record.timeMillis, record.vehicle.getAmountCents());
+        }
+        return sequence;
+    }
+    
+    // Blocks until the record with this sequence (and every earlier one) is on disk
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (this) {
+            while (durableSequence < sequence) {
+                checkWritable();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for journal sync");
+                }
+            }
+        }
+    }
+    
+    public synchronized long getLastSequence() {
+        return lastAppendedSequence;
+    }
+    
+    /**
+     * Waits for everything appended so far to be durable, then starts a new
+     * segment. Callers must stop appends first (the engine quiesces all lanes)
+     * so the returned sequence is an exact cut point for a snapshot.
+     */
+    public long rollSegment() throws IOException {
+        long cut = getLastSequence();
+        awaitDurable(cut);
+        synchronized (this) {
+            checkWritable();
+            if (lastAppendedSequence != cut) {
+                throw new IllegalStateException("Journal appended to while rolling");
+            }
+            // The flusher is idle: it only picks up the channel together with a non-empty buffer
+            FileChannel next = openSegment(cut + 1);
+            channel.close();
+            channel = next;
+        }
+        return cut;
+    }
+    
+    // Removes segments that only hold records at or below the snapshot sequence
+    public void deleteSegmentsUpTo(long snapshotSequence) throws IOException {
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequenceOf(segments.get(i + 1)) <= snapshotSequence + 1) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            channel.close();
+        }
+    }
+    
+    private synchronized long append(byte type, int spotIndex, Vehicle vehicle, long timeMillis, long amountCents) throws IOException {
+        checkWritable();
+        byte[] plate = vehicle.getNumber().getBytes(StandardCharsets.UTF_8);
+        byte[] vehicleType = vehicle.getType().getDisplayName().getBytes(StandardCharsets.UTF_8);
+        int length = FIXED_PAYLOAD_BYTES + plate.length + vehicleType.length;
+        ensureCapacity(RECORD_HEADER_BYTES + length);
+        
+        long sequence = ++lastAppendedSequence;
+        int start = pending.position();
+        pending.putInt(length);
+        pending.putInt(0); // CRC filled in below
+        pending.put(type);
+        pending.putLong(sequence);
+        pending.putLong(timeMillis);
+        pending.putInt(spotIndex);
+        pending.putLong(amountCents);
+        pending.putShort((short) plate.length);
+        pending.put(plate);
+        pending.putShort((short) vehicleType.length);
+        pending.put(vehicleType);
+        
+        crc.reset();
+        crc.update(pending.array(), start + RECORD_HEADER_BYTES, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        
+        notifyAll(); // Wake the flusher
+        return sequence;
+    }
+    
+    private void flushLoop() {
+        ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        while (true) {
+            long batchSequence;
+            FileChannel target;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only close() stops the flusher
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                // Swap buffers so lanes keep appending while this batch is written
+                ByteBuffer full = pending;
+                pending = writing;
+                pending.clear();
+                writing = full;
+                batchSequence = lastAppendedSequence;
+                target = channel;
+            }
+            
+            writing.flip();
+            try {
+                while (writing.hasRemaining()) {
+                    target.write(writing);
+                }
+                target.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            writing.clear();
+            
+            synchronized (this) {
+                durableSequence = batchSequence;
+                notifyAll();
+            }
+        }
+    }
+    
+    private void checkWritable() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal write failed", failure);
+        }
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+    }
+    
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+    }
+    
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        Path segment = directory.resolve(SEGMENT_PREFIX + String.format("%019d", firstSequence) + SEGMENT_SUFFIX);
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    private static Record decode(ByteBuffer buffer) throws IOException {
+        byte type = (byte) (buffer.get() & ~BATCH_CONTINUES);
+        long sequence = buffer.getLong();
+        long timeMillis = buffer.getLong();
+        int spotIndex = buffer.getInt();
+        long amountCents = buffer.getLong();
+        String plate = readString(buffer);
+        String typeName = readString(buffer);
+        VehicleType vehicleType = VehicleType.fromName(typeName);
+        if (vehicleType == null) {
+            throw new IOException("Journal record " + sequence + " has unknown vehicle type " + typeName);
+        }
+        return new Record(type, sequence, timeMillis, spotIndex, new Vehicle(plate, vehicleType, amountCents, timeMillis));
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    // Zero-padded names sort in sequence order
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+    
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
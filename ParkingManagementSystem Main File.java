@@ -3,19 +3,28 @@ import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ParkingManagementSystem extends JFrame {
-    private Vehicle[] parkedVehicles;
-    private ParkingSpot[] parkingSpots;
-    private JPanel mainPanel, spotPanel;
+    private static final int SPOT_COUNT = 20;
+    private static final int TILE_GRID_LIMIT = 400; // Larger lots use the virtualized lot map
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 60;
+    private static final int SPOT_FEED_BATCH = 256;
+    
+    private final ParkingEngine engine;
+    private final EngineWorker engineWorker = new EngineWorker("parking-ui-engine");
+    private JPanel mainPanel;
+    private SpotView spotView;
+    private SpotRefreshCoalescer spotRefresher;
+    private JLabel statusLabel;
     private JTextField vehicleNumberField;
     private JComboBox<String> vehicleTypeCombo;
     
-    // Fixed amounts for each vehicle type
-    private static final double CAR_AMOUNT = 5.00;
-    private static final double MOTORCYCLE_AMOUNT = 3.00;
-    private static final double TRUCK_AMOUNT = 8.00;
-    
     // Color scheme moved from static fields to instance variables
     private Color bgColor;
     private Color panelColor;
@@ -26,6 +35,17 @@ public class ParkingManagementSystem extends JFrame {
     private Color buttonTextColor;
     
     public ParkingManagementSystem() {
+        this(new ParkingEngine(SPOT_COUNT));
+    }
+    
+    public ParkingManagementSystem(LotLayout layout) {
+        this(new ParkingEngine(layout));
+    }
+    
+    // The frame is just one client of the engine; gate lanes can share the same instance
+    public ParkingManagementSystem(ParkingEngine engine) {
+        this.engine = engine;
+        
         // Initialize colors optimized for projector visibility
         bgColor = new Color(220, 220, 220);       // Light gray background
         panelColor = new Color(180, 180, 180);    // Slightly darker gray for panels
@@ -35,23 +55,13 @@ public class ParkingManagementSystem extends JFrame {
         textColor = new Color(0, 0, 0);           // Black text for maximum contrast
         buttonTextColor = new Color(255, 255, 255); // White text for buttons
         
-        // Simple array initialization
-        parkedVehicles = new Vehicle[20]; // Maximum 20 vehicles
-        parkingSpots = new ParkingSpot[20]; // 20 parking spots
-        initializeSpots();
         setupGUI();
     }
     
-    private void initializeSpots() {
-        for(int i = 0; i < parkingSpots.length; i++) {
-            parkingSpots[i] = new ParkingSpot(i + 1);
-        }
-    }
-    
     private void setupGUI() {
         setTitle("Simple Parking Management");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(900, 600);
+        setSize(1100, 600); // Room for the live stats column
         
         mainPanel = new JPanel();
         mainPanel.setLayout(new BorderLayout(10, 10));
@@ -63,6 +73,7 @@ public class ParkingManagementSystem extends JFrame {
         
         mainPanel.add(headerPanel, BorderLayout.NORTH);
         mainPanel.add(parkingView, BorderLayout.CENTER);
+        mainPanel.add(createStatusBar(), BorderLayout.SOUTH);
         
         add(mainPanel);
         setLocationRelativeTo(null);
@@ -82,6 +93,14 @@ public class ParkingManagementSystem extends JFrame {
         return headerPanel;
     }
     
+    private JLabel createStatusBar() {
+        statusLabel = new JLabel("Ready");
+        statusLabel.setForeground(textColor);
+        statusLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        return statusLabel;
+    }
+    
     private JPanel createParkingView() {
         JPanel parkingView = new JPanel(new BorderLayout(10, 10));
         parkingView.setBackground(bgColor);
@@ -99,7 +118,9 @@ public class ParkingManagementSystem extends JFrame {
         
         setupInputComponents(inputPanel);
         
-        spotPanel = new JPanel(new GridLayout(4, 5, 10, 10));
+        JComponent spotPanel = createSpotPanel();
+        spotRefresher = new SpotRefreshCoalescer(spotView, engine.getCapacity());
+        followChanges();
         spotPanel.setBackground(bgColor);
         spotPanel.setBorder(BorderFactory.createTitledBorder(
             BorderFactory.createLineBorder(textColor, 2), // Thicker border
@@ -110,14 +131,50 @@ public class ParkingManagementSystem extends JFrame {
             textColor
         ));
         
-        updateSpotPanel();
+        StatsPanel statsPanel = new StatsPanel(engine, textColor);
+        statsPanel.setBackground(bgColor);
+        statsPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(textColor, 2),
+            "Live Stats",
+            TitledBorder.LEFT,
+            TitledBorder.TOP,
+            new Font("Arial", Font.BOLD, 16),
+            textColor
+        ));
         
         parkingView.add(inputPanel, BorderLayout.NORTH);
         parkingView.add(spotPanel, BorderLayout.CENTER);
+        parkingView.add(statsPanel, BorderLayout.EAST);
         
         return parkingView;
     }
     
+    private JComponent createSpotPanel() {
+        if (engine.getCapacity() <= TILE_GRID_LIMIT) {
+            SpotGridPanel grid = new SpotGridPanel(engine, freeSpotColor, occupiedSpotColor, textColor);
+            spotView = grid;
+            return grid;
+        }
+        
+        LotMapPanel map = new LotMapPanel(engine, freeSpotColor, occupiedSpotColor, textColor);
+        map.setBackground(bgColor);
+        map.setSpotClickHandler(this::showSpotDetails);
+        spotView = map;
+        
+        JPanel mapPanel = new JPanel(new BorderLayout(5, 5));
+        if (map.getLevelCount() > 1) {
+            JComboBox<String> levelCombo = new JComboBox<>();
+            for (LotLayout.Level level : engine.getLayout().getLevels()) {
+                levelCombo.addItem("Level " + level.getNumber());
+            }
+            styleComboBox(levelCombo);
+            levelCombo.addActionListener(e -> map.setLevel(levelCombo.getSelectedIndex()));
+            mapPanel.add(levelCombo, BorderLayout.NORTH);
+        }
+        mapPanel.add(new JScrollPane(map), BorderLayout.CENTER);
+        return mapPanel;
+    }
+    
     private void setupInputComponents(JPanel inputPanel) {
         // Change from GridLayout to a more flexible layout
         inputPanel.setLayout(new GridBagLayout());
@@ -132,15 +189,17 @@ public class ParkingManagementSystem extends JFrame {
         
         // Vehicle Type components with pricing information
         JLabel vehicleTypeLabel = createStyledLabel("Vehicle Type:");
-        vehicleTypeCombo = new JComboBox<>(new String[]{"Car ($5.00)", "Motorcycle ($3.00)", "Truck ($8.00)"});
+        vehicleTypeCombo = new JComboBox<>(vehicleTypeLabels());
         styleComboBox(vehicleTypeCombo);
         
         // Buttons
         JButton parkButton = createStyledButton("Park Vehicle");
         JButton removeButton = createStyledButton("Remove Vehicle");
+        JButton replayButton = createStyledButton("Replay Gate Log...");
         
         parkButton.addActionListener(e -> parkVehicle());
         removeButton.addActionListener(e -> removeVehicle());
+        replayButton.addActionListener(e -> replayGateLog());
         
         // Add components with GridBagConstraints for better positioning
         gbc.gridx = 0;
@@ -172,51 +231,52 @@ public class ParkingManagementSystem extends JFrame {
         gbc.weightx = 0.5;
         inputPanel.add(parkButton, gbc);
         
+        gbc.gridx = 1;
+        gbc.gridy = 2;
+        gbc.gridwidth = 1;
+        inputPanel.add(replayButton, gbc);
+        
         gbc.gridx = 2;
         gbc.gridy = 2;
         gbc.gridwidth = 1;
         inputPanel.add(removeButton, gbc);
     }
     
-    private void updateSpotPanel() {
-        spotPanel.removeAll();
-        
-        for(ParkingSpot spot : parkingSpots) {
-            JPanel spotBox = new JPanel(new BorderLayout());
-            spotBox.setBackground(spot.isOccupied() ? occupiedSpotColor : freeSpotColor);
-            spotBox.setBorder(BorderFactory.createLineBorder(textColor, 2)); // Thicker border
-            
-            JLabel spotLabel = new JLabel("Spot " + spot.getSpotNumber(), SwingConstants.CENTER);
-            spotLabel.setForeground(textColor);
-            spotLabel.setFont(new Font("Arial", Font.BOLD, 14)); // Bold font
-            spotBox.add(spotLabel, BorderLayout.NORTH);
-            
-            if(spot.isOccupied()) {
-                // Create a panel for vehicle info
-                JPanel vehicleInfoPanel = new JPanel(new GridLayout(2, 1));
-                vehicleInfoPanel.setBackground(spot.isOccupied() ? occupiedSpotColor : freeSpotColor);
-                
-                JLabel vehicleLabel = new JLabel(spot.getParkedVehicle().getNumber(), SwingConstants.CENTER);
-                vehicleLabel.setForeground(textColor);
-                vehicleLabel.setFont(new Font("Arial", Font.BOLD, 12)); // Bold font
-                
-                JLabel typeLabel = new JLabel(spot.getParkedVehicle().getType() + 
-                                           " ($" + String.format("%.2f", spot.getParkedVehicle().getAmount()) + ")", 
-                                           SwingConstants.CENTER);
-                typeLabel.setForeground(textColor);
-                typeLabel.setFont(new Font("Arial", Font.BOLD, 11)); // Bold font
-                
-                vehicleInfoPanel.add(vehicleLabel);
-                vehicleInfoPanel.add(typeLabel);
-                
-                spotBox.add(vehicleInfoPanel, BorderLayout.CENTER);
+    // Parks and removes from this frame, gates and replays all reach the map through the engine's change feed
+    private void followChanges() {
+        engine.getChangeFeed().subscribe("spot-map", SPOT_FEED_BATCH, new ChangeFeed.Handler() {
+            @Override
+            public void onChange(ChangeFeed.Change change, boolean endOfBatch) {
+                // Only the spots touched are repainted, batched with others in the same frame
+                spotRefresher.markDirty(change.getSpotIndex());
             }
             
-            spotPanel.add(spotBox);
+            @Override
+            public void onOverrun(long missed) {
+                spotRefresher.markAllDirty();
+            }
+        });
+    }
+    
+    private void showSpotDetails(int spotIndex) {
+        ParkingSpot spot = engine.getSpot(spotIndex);
+        Vehicle vehicle = spot.getParkedVehicle();
+        String location = "Spot " + spot.getSpotNumber() + 
+                          "\nLevel " + spot.getLevelNumber() + ", Zone " + spot.getZone().getName();
+        if (vehicle == null) {
+            showMessage(location + "\nFree", "Spot Details", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            showMessage(location + 
+                       "\nVehicle Number: " + vehicle.getNumber() + 
+                       "\nVehicle Type: " + vehicle.getType() + 
+                       "\nParked Since: " + String.format("%tF %<tR", vehicle.getEntryTime()) + 
+                       "\nFee So Far: $" + formatCents(engine.getTariff().quoteCents(vehicle.getType(), vehicle.getEntryTime(), engine.getClock().millis())), 
+                       "Spot Details", JOptionPane.INFORMATION_MESSAGE);
         }
-        
-        spotPanel.revalidate();
-        spotPanel.repaint();
+    }
+    
+    private static String formatCents(long cents) {
+        return cents / 100 + "." + String.format("%02d", cents % 100);
     }
     
     private JLabel createStyledLabel(String text) {
@@ -244,6 +304,16 @@ public class ParkingManagementSystem extends JFrame {
         textField.setFont(new Font("Arial", Font.PLAIN, 14));
     }
     
+    // Labels like "Car ($5.00)" with the first-hour price, one per VehicleType in ordinal order
+    private String[] vehicleTypeLabels() {
+        String[] labels = new String[VehicleType.count()];
+        for (int i = 0; i < labels.length; i++) {
+            VehicleType type = VehicleType.byOrdinal(i);
+            labels[i] = type + " ($" + formatCents(engine.getTariff().getFirstHourCents(type)) + ")";
+        }
+        return labels;
+    }
+    
     private void styleComboBox(JComboBox<String> comboBox) {
         comboBox.setBackground(Color.WHITE); // White background for better contrast
         comboBox.setForeground(textColor);
@@ -253,163 +323,168 @@ public class ParkingManagementSystem extends JFrame {
     
     private void parkVehicle() {
         String vehicleNumber = vehicleNumberField.getText();
-        String vehicleTypeWithPrice = (String) vehicleTypeCombo.getSelectedItem();
-        
-        // Basic validation
-        if (!validateVehicleNumber(vehicleNumber)) {
-            showMessage("Vehicle number must be at least 2 alphanumeric characters", "Input Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        // Extract just the vehicle type from the combo box selection
-        String vehicleType = vehicleTypeWithPrice.split(" \(\$")[0];
-        
-        // Get the fixed amount based on vehicle type
-        double amount = getAmountForVehicleType(vehicleType);
-        
-        // Check if vehicle already exists
-        if (checkVehicleExists(vehicleNumber)) {
-            showMessage("Vehicle with number " + vehicleNumber + " is already parked", "Parking Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        // Find available spot
-        ParkingSpot spot = findAvailableSpot();
-        
-        if (spot == null) {
-            showMessage("No parking spots available", "Parking Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        // Create vehicle and occupy spot
-        Vehicle vehicle = new Vehicle(vehicleNumber, vehicleType, amount);
-        if (!spot.occupy(vehicle)) {
-            showMessage("Failed to occupy parking spot", "System Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
+        // Combo entries are in ordinal order, so no label parsing is needed
+        VehicleType vehicleType = VehicleType.byOrdinal(vehicleTypeCombo.getSelectedIndex());
         
-        // Store in array
-        boolean stored = false;
-        for (int i = 0; i < parkedVehicles.length; i++) {
-            if (parkedVehicles[i] == null) {
-                parkedVehicles[i] = vehicle;
-                stored = true;
+        // Inputs are read on the EDT; the engine call itself runs on the worker
+        engineWorker.submit(() -> engine.parkVehicle(vehicleNumber, vehicleType),
+            result -> onParkCompleted(result, vehicleNumber, vehicleType),
+            this::showEngineError);
+    }
+    
+    private void onParkCompleted(ParkingResult result, String vehicleNumber, VehicleType vehicleType) {
+        switch(result.getStatus()) {
+            case PARKED:
+                showMessage("Vehicle parked successfully at spot " + result.getSpotNumber() + 
+                           "\nVehicle Type: " + vehicleType + 
+                           "\nFirst Hour: $" + String.format("%.2f", result.getVehicle().getAmountCents() / 100.0), 
+                           "Success", JOptionPane.INFORMATION_MESSAGE);
+                clearVehicleNumber(vehicleNumber);
+                break;
+            case INVALID_NUMBER:
+                showMessage("Vehicle number must be " + engine.getPlateFormat().getDescription(), "Input Error", JOptionPane.ERROR_MESSAGE);
+                break;
+            case ALREADY_PARKED:
+                showMessage("Vehicle with number " + vehicleNumber + " is already parked", "Parking Error", JOptionPane.ERROR_MESSAGE);
+                break;
+            case NO_SPOT_AVAILABLE:
+                showMessage("No parking spots available for vehicle type " + vehicleType, "Parking Error", JOptionPane.ERROR_MESSAGE);
+                break;
+            default:
+                showMessage("Could not park vehicle " + vehicleNumber + ": " + result.getStatus(), "System Error", JOptionPane.ERROR_MESSAGE);
                 break;
-            }
-        }
-        
-        if (!stored) {
-            showMessage("Failed to store vehicle in system", "System Error", JOptionPane.ERROR_MESSAGE);
-            return;
         }
-        
-        updateSpotPanel();
-        
-        showMessage("Vehicle parked successfully at spot " + spot.getSpotNumber() + 
-                   "\nVehicle Type: " + vehicleType + 
-                   "\nParking Fee: $" + String.format("%.2f", amount), 
-                   "Success", JOptionPane.INFORMATION_MESSAGE);
-        
-        vehicleNumberField.setText("");
     }
     
     private void removeVehicle() {
         String vehicleNumber = vehicleNumberField.getText();
         
-        // Basic validation
-        if (!validateVehicleNumber(vehicleNumber)) {
-            showMessage("Vehicle number must be at least 2 alphanumeric characters", "Input Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        // Find vehicle in the system
-        int vehicleIndex = findVehicleIndex(vehicleNumber);
-        if (vehicleIndex == -1) {
-            showMessage("Vehicle with number " + vehicleNumber + " is not parked here", "Parking Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        // Remove from array
-        Vehicle vehicle = parkedVehicles[vehicleIndex];
-        parkedVehicles[vehicleIndex] = null;
-        
-        // Find and vacate the spot
-        boolean spotVacated = false;
-        int spotNumber = 0;
-        
-        for (ParkingSpot spot : parkingSpots) {
-            if (spot.getParkedVehicle() != null && 
-                spot.getParkedVehicle().getNumber().equals(vehicleNumber)) {
-                
-                spotNumber = spot.getSpotNumber();
-                if (!spot.vacate()) {
-                    showMessage("Failed to vacate parking spot", "System Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-                spotVacated = true;
+        engineWorker.submit(() -> engine.removeVehicle(vehicleNumber),
+            result -> onRemoveCompleted(result, vehicleNumber),
+            this::showEngineError);
+    }
+    
+    private void onRemoveCompleted(ParkingResult result, String vehicleNumber) {
+        switch(result.getStatus()) {
+            case REMOVED:
+                showMessage("Vehicle removed successfully from spot " + result.getSpotNumber() + 
+                    "\nParking Fee: $" + formatCents(result.getFeeCents()), 
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+                clearVehicleNumber(vehicleNumber);
+                break;
+            case INVALID_NUMBER:
+                showMessage("Vehicle number must be " + engine.getPlateFormat().getDescription(), "Input Error", JOptionPane.ERROR_MESSAGE);
+                break;
+            default:
+                showMessage("Vehicle with number " + vehicleNumber + " is not parked here" + similarPlatesHint(vehicleNumber),
+                    "Parking Error", JOptionPane.ERROR_MESSAGE);
                 break;
-            }
         }
-        
-        if (!spotVacated) {
-            // This should never happen if our data is consistent
-            showMessage("Vehicle found in system but not in any parking spot", "System Error", JOptionPane.ERROR_MESSAGE);
-            return;
+    }
+    
+    // A mistyped or misread plate is usually one or two characters off a parked one
+    private String similarPlatesHint(String vehicleNumber) {
+        List<ParkingSpot> similar = engine.findSimilarPlates(vehicleNumber, 2, 3);
+        if (similar.isEmpty()) {
+            return "";
         }
-        
-        updateSpotPanel();
-        
-        showMessage("Vehicle removed successfully from spot " + spotNumber, 
-            "Success", JOptionPane.INFORMATION_MESSAGE);
-        
-        vehicleNumberField.setText("");
+        StringBuilder hint = new StringBuilder("\nDid you mean:");
+        for (ParkingSpot spot : similar) {
+            hint.append(' ').append(spot.getParkedVehicle().getNumber()).append(" (spot ").append(spot.getSpotNumber()).append(')');
+        }
+        return hint.toString();
     }
     
-    private int findVehicleIndex(String vehicleNumber) {
-        for (int i = 0; i < parkedVehicles.length; i++) {
-            if (parkedVehicles[i] != null && parkedVehicles[i].getNumber().equals(vehicleNumber)) {
-                return i;
-            }
+    // Applies a gate controller's buffered park/remove log in one batch and one repaint
+    private void replayGateLog() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
-        return -1;
+        Path file = chooser.getSelectedFile().toPath();
+        engineWorker.submit(() -> {
+                try {
+                    return engine.applyBatch(ParkingBatch.load(file));
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            },
+            results -> onBatchCompleted(results, file),
+            this::showEngineError);
     }
     
-    private ParkingSpot findAvailableSpot() {
-        for (ParkingSpot spot : parkingSpots) {
-            if (!spot.isOccupied()) {
-                return spot;
+    private void onBatchCompleted(ParkingResult[] results, Path file) {
+        int applied = 0;
+        for (ParkingResult result : results) {
+            if (result.isSuccess()) {
+                applied++;
             }
         }
-        return null;
+        showMessage("Applied " + applied + " of " + results.length + " entries from " + file.getFileName(),
+            applied == results.length ? "Replay Complete" : "Replay Partly Applied",
+            applied == results.length ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
     }
     
-    private boolean validateVehicleNumber(String vehicleNumber) {
-        if (vehicleNumber == null || vehicleNumber.trim().isEmpty()) {
-            return false;
+    // Leaves the field alone if the attendant already typed the next plate
+    private void clearVehicleNumber(String vehicleNumber) {
+        if (vehicleNumberField.getText().equals(vehicleNumber)) {
+            vehicleNumberField.setText("");
         }
-        
-        // Basic validation - alphanumeric with minimum 2 characters
-        return vehicleNumber.matches("^[A-Za-z0-9]{2,}$");
     }
     
-    private boolean checkVehicleExists(String vehicleNumber) {
-        return findVehicleIndex(vehicleNumber) != -1;
+    private void showEngineError(Throwable error) {
+        showMessage("Unexpected error: " + error.getMessage(), "System Error", JOptionPane.ERROR_MESSAGE);
     }
     
+    // Non-modal: the status bar never blocks the attendant or the EDT
     private void showMessage(String message, String title, int messageType) {
-        JOptionPane.showMessageDialog(this, message, title, messageType);
+        statusLabel.setForeground(messageType == JOptionPane.ERROR_MESSAGE ? occupiedSpotColor.darker() : textColor);
+        statusLabel.setText(title + ": " + message.replace("\n", "  |  "));
     }
     
-    private double getAmountForVehicleType(String vehicleType) {
-        switch(vehicleType) {
-            case "Car":
-                return CAR_AMOUNT;
-            case "Motorcycle":
-                return MOTORCYCLE_AMOUNT;
-            case "Truck":
-                return TRUCK_AMOUNT;
-            default:
-                return 0.0; // Default case, should never happen
+    // -Dparking.store=<file> keeps the spot table in a memory-mapped file that survives restarts
+    private static ParkingEngine createEngine(LotLayout layout, GateSpotAllocator.Policy policy) throws IOException {
+        SpotPools pools = policy == null ? new SpotPools(layout) : new SpotPools(layout, policy);
+        String storeFile = System.getProperty(MappedSpotStore.STORE_PROPERTY);
+        if (storeFile == null) {
+            return new ParkingEngine(layout, pools);
+        }
+        MappedSpotStore store = MappedSpotStore.open(Paths.get(storeFile), layout.getCapacity());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch(IOException e) {
+                // Mapped pages are still written back by the OS
+            }
+        }, "parking-store-shutdown"));
+        try {
+            return new ParkingEngine(layout, pools, store);
+        } catch(IllegalStateException e) {
+            throw new IOException(storeFile + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private static ParkingPersistence openPersistence(ParkingEngine engine, String dataDirectory) throws IOException {
+        ParkingPersistence persistence = ParkingPersistence.open(Paths.get(dataDirectory), engine);
+        persistence.startSnapshots(SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                persistence.close();
+            } catch(IOException e) {
+                // The journal is already durable; the next start just replays more of it
+            }
+        }, "parking-persistence-shutdown"));
+        return persistence;
+    }
+    
+    // -Dparking.seed=<file> fills an empty lot from an exported state file or CSV; persistence, if any, snapshots it at once
+    private static void seedLot(ParkingEngine engine, String seedFile, ParkingPersistence persistence) throws IOException {
+        if (engine.getParkedCount() != 0) {
+            throw new IOException("the lot already holds " + engine.getParkedCount() + " recovered vehicles");
+        }
+        LotStateFile.seed(engine, Paths.get(seedFile));
+        if (persistence != null) {
+            persistence.snapshot();
         }
     }
     
@@ -421,56 +496,90 @@ public class ParkingManagementSystem extends JFrame {
             } catch(Exception e) {
                 // Silently continue with default look and feel
             }
-            new ParkingManagementSystem().setVisible(true);
+            
+            LotLayout layout;
+            try {
+                layout = LotLayout.loadStartupLayout(SPOT_COUNT);
+            } catch(IOException e) {
+                JOptionPane.showMessageDialog(null, "Could not load lot layout, using the default " + SPOT_COUNT + " spots:\n" + e.getMessage(),
+                    "Layout Error", JOptionPane.WARNING_MESSAGE);
+                layout = LotLayout.singleLevel(SPOT_COUNT);
+            }
+            
+            GateSpotAllocator.Policy policy = null;
+            try {
+                policy = GateSpotAllocator.loadStartupPolicy();
+            } catch(IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(null, "Could not read the allocation policy, using the default:\n" + e.getMessage(),
+                    "Allocation Error", JOptionPane.WARNING_MESSAGE);
+            }
+            
+            String dataDirectory = System.getProperty(ParkingPersistence.DATA_PROPERTY);
+            if (dataDirectory != null && System.getProperty(MappedSpotStore.STORE_PROPERTY) != null) {
+                // Both would restore the same vehicles; the spot store already survives restarts on its own
+                JOptionPane.showMessageDialog(null, "Use either -D" + ParkingPersistence.DATA_PROPERTY + " or -D" + MappedSpotStore.STORE_PROPERTY + ", not both",
+                    "Recovery Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            ParkingEngine engine;
+            try {
+                engine = createEngine(layout, policy);
+            } catch(IOException e) {
+                JOptionPane.showMessageDialog(null, "Could not open the spot store:\n" + e.getMessage(),
+                    "Storage Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            try {
+                engine.setPlateFormat(PlateFormat.loadStartupFormat());
+            } catch(IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(null, "Could not read the plate format, accepting any 2 to " + ParkingEngine.MAX_PLATE_LENGTH + " letters or digits:\n" + e.getMessage(),
+                    "Plate Format Error", JOptionPane.WARNING_MESSAGE);
+            }
+            
+            ParkingPersistence persistence = null;
+            if (dataDirectory != null) {
+                // Refuse to start rather than run with occupancy that silently diverges from disk
+                try {
+                    persistence = openPersistence(engine, dataDirectory);
+                } catch(IOException e) {
+                    JOptionPane.showMessageDialog(null, "Could not recover parking data from " + dataDirectory + ":\n" + e.getMessage(),
+                        "Recovery Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            String seedFile = System.getProperty(LotStateFile.SEED_PROPERTY);
+            if (seedFile != null) {
+                // A bad seed leaves the lot as it was, so the frame can still start
+                try {
+                    seedLot(engine, seedFile, persistence);
+                } catch(IOException e) {
+                    JOptionPane.showMessageDialog(null, "Could not seed the lot from " + seedFile + ":\n" + e.getMessage(),
+                        "Seed Error", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+            String metricsPort = System.getProperty(MetricsServer.PORT_PROPERTY);
+            if (metricsPort != null) {
+                // Metrics are optional, so a bad port only costs the endpoint
+                try {
+                    MetricsServer.start(engine, Integer.parseInt(metricsPort));
+                } catch(IOException | IllegalArgumentException e) {
+                    JOptionPane.showMessageDialog(null, "Could not start the metrics endpoint on port " + metricsPort + ":\n" + e.getMessage(),
+                        "Metrics Error", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+            ParkingManagementSystem frame = new ParkingManagementSystem(engine);
+            String gatePort = System.getProperty(GateServer.PORT_PROPERTY);
+            if (gatePort != null) {
+                try {
+                    GateServer.start(engine, Integer.parseInt(gatePort));
+                } catch(IOException | IllegalArgumentException e) {
+                    JOptionPane.showMessageDialog(null, "Could not start the gate service on port " + gatePort + ":\n" + e.getMessage(),
+                        "Gate Service Error", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+            frame.setVisible(true);
         });
     }
 }
-
-class Vehicle {
-    private String number;
-    private String type;
-    private double amount;
-    
-    public Vehicle(String number, String type, double amount) {
-        this.number = number;
-        this.type = type;
-        this.amount = amount;
-    }
-    
-    public String getNumber() { return number; }
-    public String getType() { return type; }
-    public double getAmount() { return amount; }
-}
-
-class ParkingSpot {
-    private int spotNumber;
-    private Vehicle parkedVehicle;
-    private boolean occupied;
-    
-    public ParkingSpot(int spotNumber) {
-        this.spotNumber = spotNumber;
-        this.occupied = false;
-    }
-    
-    public boolean occupy(Vehicle vehicle) {
-        if (this.occupied || vehicle == null) {
-            return false;
-        }
-        this.parkedVehicle = vehicle;
-        this.occupied = true;
-        return true;
-    }
-    
-    public boolean vacate() {
-        if (!this.occupied) {
-            return false;
-        }
-        this.parkedVehicle = null;
-        this.occupied = false;
-        return true;
-    }
-    
-    public boolean isOccupied() { return occupied; }
-    public int getSpotNumber() { return spotNumber; }
-    public Vehicle getParkedVehicle() { return parkedVehicle; }
-}
\ No newline at end of file
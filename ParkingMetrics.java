@@ -0,0 +1,113 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for the engine, kept in LongAdders so that many lanes
+ * updating them at once write to separate cells instead of fighting over one
+ * cache line. Reads sum the cells and are meant for dashboards, not for
+ * decisions: a read taken while lanes are busy is approximate.
+ *
+ * Occupancy per zone and per vehicle type is updated where the engine
+ * occupies and vacates a spot, so it also covers recovery and restarts.
+ *
+ * Latency is sampled: reading the clock twice costs more than the rest of
+ * the bookkeeping, so only one call in LATENCY_SAMPLE_RATE is timed. Outcome
+ * counts and revenue cover every call.
+ */
+public class ParkingMetrics {
+    public static final int LATENCY_SAMPLE_RATE = 64; // Power of two
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private final LotLayout layout;
+    private final LongAdder[] occupiedByZone;
+    private final LongAdder[] occupiedByType;
+    private final LongAdder[] outcomes = new LongAdder[ParkingResult.Status.values().length];
+    private final LongAdder revenueCents = new LongAdder();
+    private final LatencyHistogram parkLatency = new LatencyHistogram();
+    private final LatencyHistogram removeLatency = new LatencyHistogram();
+    
+    public ParkingMetrics(LotLayout layout) {
+        this.layout = layout;
+        occupiedByZone = adders(layout.getZoneCount());
+        occupiedByType = adders(VehicleType.count());
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+    
+    void spotOccupied(int spotIndex, Vehicle vehicle) {
+        occupiedByZone[layout.zoneIndexOf(spotIndex)].increment();
+        occupiedByType[vehicle.getType().ordinal()].increment();
+    }
+    
+    void spotVacated(int spotIndex, Vehicle vehicle) {
+        occupiedByZone[layout.zoneIndexOf(spotIndex)].decrement();
+        occupiedByType[vehicle.getType().ordinal()].decrement();
+    }
+    
+    // Start time to hand to recordPark/recordRemove, or NOT_TIMED for calls outside the sample
+    long startTimer() {
+        return (ThreadLocalRandom.current().nextInt() & (LATENCY_SAMPLE_RATE - 1)) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    void recordPark(ParkingResult result, long startNanos) {
+        recordOutcome(result);
+        if (startNanos != NOT_TIMED) {
+            parkLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+    
+    void recordRemove(ParkingResult result, long startNanos) {
+        recordOutcome(result);
+        if (startNanos != NOT_TIMED) {
+            removeLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+    
+    // Counts a park or remove without timing it, e.g. one entry of a batch
+    void recordOutcome(ParkingResult result) {
+        outcomes[result.getStatus().ordinal()].increment();
+        if (result.getStatus() == ParkingResult.Status.REMOVED) {
+            revenueCents.add(result.getFeeCents());
+        }
+    }
+    
+    public LotLayout getLayout() { return layout; }
+    
+    public long getOccupiedInZone(int zoneIndex) {
+        return occupiedByZone[zoneIndex].sum();
+    }
+    
+    public long getOccupied(VehicleType type) {
+        return occupiedByType[type.ordinal()].sum();
+    }
+    
+    // Number of park/remove calls that ended with this status
+    public long getCount(ParkingResult.Status status) {
+        return outcomes[status.ordinal()].sum();
+    }
+    
+    public long getParks() {
+        return getCount(ParkingResult.Status.PARKED);
+    }
+    
+    public long getRemoves() {
+        return getCount(ParkingResult.Status.REMOVED);
+    }
+    
+    // Fees charged at exit since startup
+    public long getRevenueCents() {
+        return revenueCents.sum();
+    }
+    
+    public LatencyHistogram getParkLatency() { return parkLatency; }
+    public LatencyHistogram getRemoveLatency() { return removeLatency; }
+    
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
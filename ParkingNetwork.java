@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Many lots run by one operator. Each lot is its own ParkingEngine with its
+ * own locks, allocator and journal, so lanes at different lots never contend
+ * and throughput grows with the number of lots and cores.
+ *
+ * Parks and removes are routed to a lot by id. A network-wide directory maps
+ * every parked plate to its lot, which answers "where is this car" without
+ * asking each lot and keeps a plate from being parked in two lots at once:
+ * a park first claims the plate in the directory, then parks in the lot, and
+ * gives the claim back if the lot refuses. All changes to the lots must go
+ * through the network for the directory to stay right.
+ *
+ * Each lot checks plates against its own engine's PlateFormat. Every format
+ * gives the same canonical form, so the directory has one key per plate
+ * whichever lot parked it. Calls that name no lot use the network's format,
+ * which should accept every lot's plates; the default accepts any.
+ */
+public class ParkingNetwork {
+    private final Map<String, Lot> lotsById;
+    private final List<Lot> lots;
+    private final ConcurrentHashMap<String, Lot> lotByPlate;
+    private final PlateFormat plateFormat;
+    
+    public static final class Lot {
+        private final String id;
+        private final ParkingEngine engine;
+        
+        private Lot(String id, ParkingEngine engine) {
+            this.id = id;
+            this.engine = engine;
+        }
+        
+        public String getId() { return id; }
+        public ParkingEngine getEngine() { return engine; }
+    }
+    
+    // Where a plate is parked: the lot and the spot in it
+    public static final class Location {
+        private final Lot lot;
+        private final ParkingSpot spot;
+        
+        private Location(Lot lot, ParkingSpot spot) {
+            this.lot = lot;
+            this.spot = spot;
+        }
+        
+        public Lot getLot() { return lot; }
+        public ParkingSpot getSpot() { return spot; }
+    }
+    
+    public static class Builder {
+        private final Map<String, Lot> lots = new LinkedHashMap<>();
+        private PlateFormat plateFormat = PlateFormat.DEFAULT;
+        
+        // The engine may already hold vehicles, e.g. recovered from its journal
+        public Builder addLot(String id, ParkingEngine engine) {
+            if (id == null || id.trim().isEmpty()) {
+                throw new IllegalArgumentException("Lot id cannot be empty");
+            }
+            if (lots.putIfAbsent(id, new Lot(id, engine)) != null) {
+                throw new IllegalArgumentException("Duplicate lot id " + id);
+            }
+            return this;
+        }
+        
+        // For removes and lookups by plate alone, where no lot's format applies
+        public Builder plateFormat(PlateFormat format) {
+            if (format == null) {
+                throw new IllegalArgumentException("Plate format cannot be null");
+            }
+            plateFormat = format;
+            return this;
+        }
+        
+        public ParkingNetwork build() {
+            if (lots.isEmpty()) {
+                throw new IllegalArgumentException("A network needs at least one lot");
+            }
+            return new ParkingNetwork(this);
+        }
+    }
+    
+    private ParkingNetwork(Builder builder) {
+        lotsById = Collections.unmodifiableMap(new LinkedHashMap<>(builder.lots));
+        lots = Collections.unmodifiableList(new ArrayList<>(builder.lots.values()));
+        plateFormat = builder.plateFormat;
+        
+        int capacity = 0;
+        for (Lot lot : lots) {
+            capacity += lot.engine.getCapacity();
+        }
+        lotByPlate = new ConcurrentHashMap<>(capacity);
+        for (Lot lot : lots) {
+            ParkingEngine engine = lot.engine;
+            for (int i = 0; i < engine.getCapacity(); i++) {
+                Vehicle vehicle = engine.getParkedVehicle(i);
+                if (vehicle != null) {
+                    Lot other = lotByPlate.putIfAbsent(vehicle.getNumber(), lot);
+                    if (other != null) {
+                        throw new IllegalStateException(vehicle.getNumber() + " is parked in both " + other.id + " and " + lot.id);
+                    }
+                }
+            }
+        }
+    }
+    
+    public ParkingResult parkVehicle(String lotId, String rawNumber, VehicleType vehicleType) {
+        Lot lot = lot(lotId);
+        String vehicleNumber = lot.engine.normalizePlate(rawNumber);
+        if (vehicleNumber == null) {
+            return ParkingResult.failure(ParkingResult.Status.INVALID_NUMBER);
+        }
+        if (lotByPlate.putIfAbsent(vehicleNumber, lot) != null) {
+            return ParkingResult.failure(ParkingResult.Status.ALREADY_PARKED);
+        }
+        
+        ParkingResult result;
+        try {
+            result = lot.engine.parkVehicle(vehicleNumber, vehicleType);
+        } catch (RuntimeException e) {
+            lotByPlate.remove(vehicleNumber, lot);
+            throw e;
+        }
+        if (!result.isSuccess()) {
+            lotByPlate.remove(vehicleNumber, lot);
+        }
+        return result;
+    }
+    
+    // Removes the plate from whichever lot it is parked in
+    public ParkingResult removeVehicle(String rawNumber) {
+        String vehicleNumber = plateFormat.normalize(rawNumber);
+        if (vehicleNumber == null) {
+            return ParkingResult.failure(ParkingResult.Status.INVALID_NUMBER);
+        }
+        Lot lot = lotByPlate.get(vehicleNumber);
+        if (lot == null) {
+            return ParkingResult.failure(ParkingResult.Status.NOT_PARKED);
+        }
+        return removeFrom(lot, vehicleNumber);
+    }
+    
+    // Exit gates know their own lot; a plate parked elsewhere is NOT_PARKED here
+    public ParkingResult removeVehicle(String lotId, String rawNumber) {
+        Lot lot = lot(lotId);
+        String vehicleNumber = lot.engine.normalizePlate(rawNumber);
+        if (vehicleNumber == null) {
+            vehicleNumber = plateFormat.normalize(rawNumber); // Parked before the lot's format changed
+        }
+        if (vehicleNumber == null) {
+            return ParkingResult.failure(ParkingResult.Status.INVALID_NUMBER);
+        }
+        if (lotByPlate.get(vehicleNumber) != lot) {
+            return ParkingResult.failure(ParkingResult.Status.NOT_PARKED);
+        }
+        return removeFrom(lot, vehicleNumber);
+    }
+    
+    // Null when the plate is not parked in any lot
+    public Location locate(String rawNumber) {
+        String vehicleNumber = plateFormat.normalize(rawNumber);
+        Lot lot = vehicleNumber == null ? null : lotByPlate.get(vehicleNumber);
+        if (lot == null) {
+            return null;
+        }
+        // The plate may be between its directory claim and its spot; then it is not parked yet
+        ParkingSpot spot = lot.engine.findSpot(vehicleNumber);
+        return spot == null ? null : new Location(lot, spot);
+    }
+    
+    public Lot getLot(String lotId) {
+        return lotsById.get(lotId);
+    }
+    
+    public List<Lot> getLots() {
+        return lots;
+    }
+    
+    public PlateFormat getPlateFormat() {
+        return plateFormat;
+    }
+    
+    public int getParkedCount() {
+        int parked = 0;
+        for (Lot lot : lots) {
+            parked += lot.engine.getParkedCount();
+        }
+        return parked;
+    }
+    
+    public int getFreeCount() {
+        int free = 0;
+        for (Lot lot : lots) {
+            free += lot.engine.getFreeCount();
+        }
+        return free;
+    }
+    
+    public int getFreeCount(VehicleType vehicleType) {
+        int free = 0;
+        for (Lot lot : lots) {
+            free += lot.engine.getFreeCount(vehicleType);
+        }
+        return free;
+    }
+    
+    public int getCapacity() {
+        int capacity = 0;
+        for (Lot lot : lots) {
+            capacity += lot.engine.getCapacity();
+        }
+        return capacity;
+    }
+    
+    private ParkingResult removeFrom(Lot lot, String vehicleNumber) {
+        ParkingResult result = lot.engine.removeVehicle(vehicleNumber);
+        if (result.isSuccess()) {
+            lotByPlate.remove(vehicleNumber, lot);
+        }
+        return result;
+    }
+    
+    private Lot lot(String lotId) {
+        Lot lot = lotsById.get(lotId);
+        if (lot == null) {
+            throw new IllegalArgumentException("Unknown lot " + lotId);
+        }
+        return lot;
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ties an engine to its on-disk state: recovers it at startup from the
+ * newest snapshot plus the journal tail, keeps journaling every park/remove,
+ * and writes periodic snapshots so the tail to replay stays short.
+ *
+ * Finished sessions go to a SessionArchive in the sessions subdirectory. It
+ * is written just before each snapshot, so it always covers at least the
+ * snapshot's sequence; recovery replays into it only the removals it lacks.
+ */
+public class ParkingPersistence implements Closeable {
+    public static final String DATA_PROPERTY = "parking.data";
+    public static final String SESSIONS_DIRECTORY = "sessions";
+    
+    private static final long SCHEDULER_STOP_SECONDS = 30;
+    
+    private final Path directory;
+    private final ParkingEngine engine;
+    private final ParkingJournal journal;
+    private final SessionArchive archive;
+    private final Object snapshotLock = new Object();
+    private long writtenSequence; // Sequence of the snapshot on disk, guarded by snapshotLock
+    private ScheduledExecutorService snapshotScheduler;
+    
+    private ParkingPersistence(Path directory, ParkingEngine engine, ParkingJournal journal, SessionArchive archive, long writtenSequence) {
+        this.directory = directory;
+        this.engine = engine;
+        this.journal = journal;
+        this.archive = archive;
+        this.writtenSequence = writtenSequence;
+    }
+    
+    // Restores an empty engine from directory and attaches the journal for new events
+    public static ParkingPersistence open(Path directory, ParkingEngine engine) throws IOException {
+        if (engine.getParkedCount() != 0) {
+            // E.g. a populated spot store; replaying on top of it would park every vehicle twice
+            throw new IOException("Recovery needs an empty lot, but it already holds " + engine.getParkedCount() + " vehicles");
+        }
+        
+        long afterSequence = 0;
+        SessionArchive archive = SessionArchive.open(directory.resolve(SESSIONS_DIRECTORY), ZoneId.systemDefault());
+        long archivedSequence = archive.getSequence();
+        ParkingSnapshot snapshot = ParkingSnapshot.read(directory);
+        try {
+            if (snapshot != null) {
+                for (int i = 0; i < snapshot.size(); i++) {
+                    engine.restoreVehicle(snapshot.getSpotIndex(i), snapshot.getVehicle(i));
+                }
+                afterSequence = snapshot.getSequence();
+            }
+            
+            long lastSequence = ParkingJournal.replay(directory, afterSequence, record -> {
+                if (record.getType() == ParkingJournal.PARK) {
+                    engine.restoreVehicle(record.getSpotIndex(), record.getVehicle());
+                } else {
+                    Vehicle parked = engine.getParkedVehicle(record.getSpotIndex());
+                    engine.restoreRemoval(record.getSpotIndex(), record.getVehicle().getNumber());
+                    if (record.getSequence() > archivedSequence) {
+                        // A REMOVE record's amount is the fee charged
+                        archive.append(parked.getNumber(), parked.getType(), record.getSpotIndex(), parked.getEntryTime(),
+                            record.getTimeMillis(), record.getVehicle().getAmountCents());
+                    }
+                }
+            });
+            
+            ParkingJournal journal = ParkingJournal.open(directory, lastSequence);
+            engine.attachJournal(journal);
+            engine.attachArchive(archive);
+            return new ParkingPersistence(directory, engine, journal, archive, afterSequence);
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            // Saved state does not fit this lot, e.g. the layout shrank
+            throw new IOException("Saved parking state in " + directory + " does not match the lot: " + e.getMessage(), e);
+        }
+    }
+    
+    public SessionArchive getArchive() {
+        return archive;
+    }
+    
+    /**
+     * Cuts a snapshot: lanes pause only while the journal rolls to a new
+     * segment, the occupied spots are copied and the archive's size is read;
+     * the files are written after they resume. Journal segments the snapshot
+     * covers are then deleted.
+     *
+     * One snapshot is cut at a time, so a scheduled one and the final one in
+     * close() never share the temp file, and a snapshot older than the one
+     * on disk is never written over it.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long[] archivedSessions = new long[1];
+            ParkingSnapshot snapshot = engine.runQuiesced(() -> {
+                archivedSessions[0] = archive.size();
+                return ParkingSnapshot.capture(engine, journal.rollSegment());
+            });
+            if (snapshot.getSequence() < writtenSequence) {
+                return; // The journal segments between the two are already deleted, so the newer snapshot must stay
+            }
+            archive.write(directory.resolve(SESSIONS_DIRECTORY), archivedSessions[0], snapshot.getSequence());
+            snapshot.write(directory);
+            writtenSequence = snapshot.getSequence();
+            journal.deleteSegmentsUpTo(snapshot.getSequence());
+        }
+    }
+    
+    public synchronized void startSnapshots(long period, TimeUnit unit) {
+        if (snapshotScheduler != null) {
+            return;
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parking-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                // The journal still holds every event; the next attempt will catch up
+                System.err.println("Parking snapshot failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+    
+    // Takes a final snapshot so the next startup has nothing to replay
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = snapshotScheduler;
+        }
+        if (scheduler != null) {
+            // Not shutdownNow: an interrupt would close whichever file channel the running snapshot is using, the journal's included
+            scheduler.shutdown();
+            try {
+                // Waits out a scheduled snapshot already running, so ours below comes after it
+                scheduler.awaitTermination(SCHEDULER_STOP_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            snapshot();
+        } finally {
+            engine.attachJournal(null);
+            engine.attachArchive(null);
+            journal.close();
+        }
+    }
+}
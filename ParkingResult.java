@@ -0,0 +1,46 @@
+// Outcome of a ParkingEngine call, so clients decide how to report it
+public class ParkingResult {
+    public enum Status {
+        PARKED,
+        REMOVED,
+        INVALID_NUMBER,
+        ALREADY_PARKED,
+        NOT_PARKED,
+        NO_SPOT_AVAILABLE
+    }
+    
+    private final Status status;
+    private final ParkingSpot spot;
+    private final Vehicle vehicle;
+    private final long feeCents; // Charged at exit; 0 for other outcomes
+    
+    private ParkingResult(Status status, ParkingSpot spot, Vehicle vehicle, long feeCents) {
+        this.status = status;
+        this.spot = spot;
+        this.vehicle = vehicle;
+        this.feeCents = feeCents;
+    }
+    
+    public static ParkingResult parked(ParkingSpot spot, Vehicle vehicle) {
+        return new ParkingResult(Status.PARKED, spot, vehicle, 0);
+    }
+    
+    public static ParkingResult removed(ParkingSpot spot, Vehicle vehicle, long feeCents) {
+        return new ParkingResult(Status.REMOVED, spot, vehicle, feeCents);
+    }
+    
+    public static ParkingResult failure(Status status) {
+        return new ParkingResult(status, null, null, 0);
+    }
+    
+    public boolean isSuccess() {
+        return status == Status.PARKED || status == Status.REMOVED;
+    }
+    
+    public Status getStatus() { return status; }
+    public ParkingSpot getSpot() { return spot; }
+    public Vehicle getVehicle() { return vehicle; }
+    public long getFeeCents() { return feeCents; }
+    
+    public int getSpotNumber() { return spot == null ? 0 : spot.getSpotNumber(); }
+}
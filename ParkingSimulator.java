@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Headless discrete-event traffic simulator for capacity planning. It drives
+ * a ParkingEngine through a simulated clock, so a full day of traffic runs in
+ * seconds and vehicles are charged for their simulated stays.
+ *
+ * Generated traffic: arrivals are a Poisson process whose hourly rate is
+ * raised during peak hours (sampled by thinning); each arrival's type is
+ * drawn from the mix and its stay from a log-normal distribution per type.
+ * Departures are scheduled when a vehicle parks. Alternatively a gate log
+ * (see ParkingBatch) is replayed in time order, optionally paced at N times
+ * real time. In a layout with entry gates, each generated arrival uses a
+ * random gate and --allocation picks how spots are chosen for it.
+ *
+ * Reports throughput, park/remove latency, rejections (no spot free) per
+ * type, revenue, peak occupancy overall and per level, and an occupancy
+ * curve.
+ *
+ *   java ParkingSimulator [--spots 500 | --layout lot-layout.txt]
+ *       [--start 2026-03-02T00:00] [--hours 24] [--rate 120]
+ *       [--peaks 7-10:2.5,16-19:2] [--mix car:70,motorcycle:10,truck:5,ev:10,disabled:5]
+ *       [--seed 1] [--step 15] [--curve occupancy.csv] [--record gate.log]
+ *       [--allocation nearest|balanced]
+ *   java ParkingSimulator --replay gate.log [--speed 60] [--spots 500 | --layout ...]
+ * --rate is arrivals per hour outside peaks, --step the curve's interval in
+ * minutes, --speed 0 (the default) replays as fast as possible.
+ */
+public class ParkingSimulator {
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    
+    // Median stay in minutes and log-normal sigma per type, by ordinal
+    private static final double[] MEDIAN_STAY_MINUTES = {120, 90, 60, 150, 150};
+    private static final double[] STAY_SIGMA = {0.8, 0.8, 0.6, 0.7, 0.8};
+    
+    // A clock the simulation sets; the engine reads it for every park and remove
+    private static final class SimulatedClock extends Clock {
+        private final ZoneId zone;
+        private volatile long millis;
+        
+        SimulatedClock(ZoneId zone, long millis) {
+            this.zone = zone;
+            this.millis = millis;
+        }
+        
+        void set(long millis) {
+            this.millis = millis;
+        }
+        
+        @Override
+        public long millis() {
+            return millis;
+        }
+        
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+        
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+        
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new SimulatedClock(zone, millis);
+        }
+    }
+    
+    private static final class Event {
+        final long timeMillis;
+        final boolean arrival;
+        final String plate;
+        final VehicleType type;
+        
+        Event(long timeMillis, boolean arrival, String plate, VehicleType type) {
+            this.timeMillis = timeMillis;
+            this.arrival = arrival;
+            this.plate = plate;
+            this.type = type;
+        }
+    }
+    
+    // Collects what happened during a run
+    private static final class Report {
+        final long[] rejectedByType = new long[VehicleType.count()];
+        final long[] arrivalsByType = new long[VehicleType.count()];
+        final List<String> curve = new ArrayList<>();
+        final int[] parkedByLevel;
+        final int[] peakByLevel;
+        final LatencyHistogram parkLatency = new LatencyHistogram();
+        final LatencyHistogram removeLatency = new LatencyHistogram();
+        long parkMaxNanos;
+        long removeMaxNanos;
+        int parks;
+        int removes;
+        long failedRemoves;
+        long revenueCents;
+        int peakOccupied;
+        long peakTimeMillis;
+        long nextSampleMillis;
+        
+        Report(int levels) {
+            parkedByLevel = new int[levels];
+            peakByLevel = new int[levels];
+        }
+        
+        void parked(long nanos) {
+            parkLatency.record(nanos);
+            parkMaxNanos = Math.max(parkMaxNanos, nanos);
+            parks++;
+        }
+        
+        void removed(long nanos) {
+            removeLatency.record(nanos);
+            removeMaxNanos = Math.max(removeMaxNanos, nanos);
+            removes++;
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        LotLayout layout = options.containsKey("layout") ? LotLayout.load(Paths.get(options.get("layout")))
+            : LotLayout.singleLevel(Integer.parseInt(options.getOrDefault("spots", "500")));
+        ZoneId zone = ZoneId.systemDefault();
+        long stepMillis = Long.parseLong(options.getOrDefault("step", "15")) * MINUTE_MILLIS;
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("--step must be positive");
+        }
+        
+        ParkingEngine engine = options.containsKey("allocation")
+            ? new ParkingEngine(layout, new SpotPools(layout, GateSpotAllocator.Policy.fromKeyword(options.get("allocation"))))
+            : new ParkingEngine(layout);
+        SimulatedClock clock = new SimulatedClock(zone, 0);
+        engine.setClock(clock);
+        Report report = new Report(layout.getLevels().size());
+        
+        long wallStart = System.nanoTime();
+        if (options.containsKey("replay")) {
+            double speed = Double.parseDouble(options.getOrDefault("speed", "0"));
+            replay(engine, clock, ParkingBatch.load(Paths.get(options.get("replay"))), speed, stepMillis, report);
+        } else {
+            long start = options.containsKey("start")
+                ? LocalDateTime.parse(options.get("start")).atZone(zone).toInstant().toEpochMilli()
+                : LocalDate.now(zone).atStartOfDay(zone).toInstant().toEpochMilli();
+            long end = start + (long) (Double.parseDouble(options.getOrDefault("hours", "24")) * HOUR_MILLIS);
+            double rate = Double.parseDouble(options.getOrDefault("rate", "120"));
+            double[] hourlyFactor = parsePeaks(options.getOrDefault("peaks", "7-10:2.5,16-19:2"));
+            double[] mix = parseMix(options.getOrDefault("mix", "car:70,motorcycle:10,truck:5,ev:10,disabled:5"));
+            Random random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+            Writer record = options.containsKey("record") ? Files.newBufferedWriter(Paths.get(options.get("record")), StandardCharsets.UTF_8) : null;
+            try {
+                simulate(engine, clock, zone, start, end, rate, hourlyFactor, mix, random, stepMillis, record, report);
+            } finally {
+                if (record != null) {
+                    record.close();
+                }
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        
+        printSummary(System.out, layout, report, wallNanos);
+        if (options.containsKey("curve")) {
+            Files.write(Paths.get(options.get("curve")), report.curve, StandardCharsets.UTF_8);
+        } else {
+            System.out.println();
+            for (String line : report.curve) {
+                System.out.println(line);
+            }
+        }
+    }
+    
+    private static void simulate(ParkingEngine engine, SimulatedClock clock, ZoneId zone, long start, long end, double rate,
+            double[] hourlyFactor, double[] mix, Random random, long stepMillis, Writer record, Report report) throws IOException {
+        double maxRate = rate;
+        for (double factor : hourlyFactor) {
+            maxRate = Math.max(maxRate, rate * factor);
+        }
+        // Departures before arrivals at the same instant, so a freed spot can be reused at once
+        PriorityQueue<Event> events = new PriorityQueue<>(Comparator.comparingLong((Event e) -> e.timeMillis)
+            .thenComparing(e -> e.arrival));
+        long nextArrival = maxRate <= 0 ? Long.MAX_VALUE : nextArrival(start, maxRate, random);
+        int vehicleNumber = 0;
+        report.nextSampleMillis = start;
+        
+        while (true) {
+            Event departure = events.peek();
+            boolean arrivalNext = nextArrival < end && (departure == null || nextArrival < departure.timeMillis);
+            long time = arrivalNext ? nextArrival : departure == null ? Long.MAX_VALUE : departure.timeMillis;
+            if (time == Long.MAX_VALUE) {
+                break;
+            }
+            sampleUntil(engine, Math.min(time, end), stepMillis, report);
+            clock.set(time);
+            
+            if (!arrivalNext) {
+                events.poll();
+                remove(engine, departure.plate, report);
+                if (record != null) {
+                    record.write("remove " + departure.plate + " " + time + "\n");
+                }
+                continue;
+            }
+            nextArrival = nextArrival(nextArrival, maxRate, random);
+            // Thinning: keep the candidate with probability rate(t) / maxRate
+            double rateNow = rate * hourlyFactor[Instant.ofEpochMilli(time).atZone(zone).getHour()];
+            if (random.nextDouble() * maxRate >= rateNow) {
+                continue;
+            }
+            VehicleType type = pickType(mix, random);
+            String plate = "SIM" + (++vehicleNumber);
+            report.arrivalsByType[type.ordinal()]++;
+            if (record != null) {
+                record.write("park " + plate + " " + type.getDisplayName() + " " + time + "\n");
+            }
+            int gate = engine.getLayout().getGates().isEmpty() ? -1 : random.nextInt(engine.getLayout().getGates().size());
+            if (park(engine, plate, type, gate, report)) {
+                int typeIndex = type.ordinal();
+                double stayMinutes = MEDIAN_STAY_MINUTES[typeIndex] * Math.exp(STAY_SIGMA[typeIndex] * random.nextGaussian());
+                long leave = time + Math.max(MINUTE_MILLIS, (long) (stayMinutes * MINUTE_MILLIS));
+                events.add(new Event(leave, false, plate, type));
+            }
+        }
+        sampleUntil(engine, end, stepMillis, report);
+    }
+    
+    // Entries are applied in time order; with speed > 0 they are paced at speed times real time
+    private static void replay(ParkingEngine engine, SimulatedClock clock, ParkingBatch log, double speed, long stepMillis, Report report)
+            throws InterruptedException {
+        Integer[] order = new Integer[log.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(log::getTimeMillis)); // Stable, so same-time entries keep file order
+        if (order.length == 0) {
+            return;
+        }
+        long firstTime = log.getTimeMillis(order[0]);
+        long wallStart = System.nanoTime();
+        report.nextSampleMillis = firstTime - Math.floorMod(firstTime, stepMillis);
+        for (int i : order) {
+            long time = log.getTimeMillis(i);
+            if (speed > 0) {
+                long dueNanos = wallStart + (long) ((time - firstTime) * 1_000_000.0 / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                }
+            }
+            sampleUntil(engine, time, stepMillis, report);
+            clock.set(time);
+            if (log.getOperation(i) == ParkingBatch.Operation.PARK) {
+                report.arrivalsByType[log.getType(i).ordinal()]++;
+                park(engine, log.getPlate(i), log.getType(i), -1, report);
+            } else {
+                remove(engine, log.getPlate(i), report);
+            }
+        }
+        sampleUntil(engine, log.getTimeMillis(order[order.length - 1]) + 1, stepMillis, report);
+    }
+    
+    private static boolean park(ParkingEngine engine, String plate, VehicleType type, int gate, Report report) {
+        long startNanos = System.nanoTime();
+        ParkingResult result = engine.parkVehicle(plate, type, gate);
+        report.parked(System.nanoTime() - startNanos);
+        if (result.getStatus() == ParkingResult.Status.NO_SPOT_AVAILABLE) {
+            report.rejectedByType[type.ordinal()]++;
+        }
+        if (result.isSuccess()) {
+            int level = levelOf(engine, result);
+            report.parkedByLevel[level]++;
+            report.peakByLevel[level] = Math.max(report.peakByLevel[level], report.parkedByLevel[level]);
+        }
+        int occupied = engine.getParkedCount();
+        if (occupied > report.peakOccupied) {
+            report.peakOccupied = occupied;
+            report.peakTimeMillis = engine.getClock().millis();
+        }
+        return result.isSuccess();
+    }
+    
+    private static void remove(ParkingEngine engine, String plate, Report report) {
+        long startNanos = System.nanoTime();
+        ParkingResult result = engine.removeVehicle(plate);
+        report.removed(System.nanoTime() - startNanos);
+        if (result.isSuccess()) {
+            report.revenueCents += result.getFeeCents();
+            report.parkedByLevel[levelOf(engine, result)]--;
+        } else {
+            report.failedRemoves++;
+        }
+    }
+    
+    private static int levelOf(ParkingEngine engine, ParkingResult result) {
+        return engine.getLayout().zoneOf(result.getSpotNumber() - 1).getLevel().getIndex();
+    }
+    
+    // Adds a curve row for every step boundary up to (not including) timeMillis
+    private static void sampleUntil(ParkingEngine engine, long timeMillis, long stepMillis, Report report) {
+        if (report.curve.isEmpty()) {
+            report.curve.add("time,occupied,free,utilization");
+        }
+        while (report.nextSampleMillis < timeMillis) {
+            int occupied = engine.getParkedCount();
+            report.curve.add(String.format(Locale.ROOT, "%s,%d,%d,%.3f",
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(report.nextSampleMillis), ZoneId.systemDefault()),
+                occupied, engine.getFreeCount(), occupied / (double) engine.getCapacity()));
+            report.nextSampleMillis += stepMillis;
+        }
+    }
+    
+    private static void printSummary(PrintStream out, LotLayout layout, Report report, long wallNanos) {
+        long arrivals = 0;
+        long rejected = 0;
+        for (int t = 0; t < report.arrivalsByType.length; t++) {
+            arrivals += report.arrivalsByType[t];
+            rejected += report.rejectedByType[t];
+        }
+        int events = report.parks + report.removes;
+        out.printf(Locale.ROOT, "spots=%d arrivals=%d rejected=%d (%.2f%%) departures=%d failed_removes=%d%n",
+            layout.getCapacity(), arrivals, rejected, percent(rejected, arrivals), report.removes - report.failedRemoves, report.failedRemoves);
+        out.printf(Locale.ROOT, "events=%d wall_ms=%.1f events_per_sec=%.0f%n",
+            events, wallNanos / 1e6, events * 1e9 / Math.max(1, wallNanos));
+        // Quantiles are histogram bucket bounds, within about 6%; the maxima are exact
+        long[] parkCounts = report.parkLatency.snapshot();
+        long[] removeCounts = report.removeLatency.snapshot();
+        out.printf(Locale.ROOT, "park_ns p50=%d p99=%d max=%d  remove_ns p50=%d p99=%d max=%d%n",
+            LatencyHistogram.quantileNanos(parkCounts, 0.50), LatencyHistogram.quantileNanos(parkCounts, 0.99),
+            report.parkMaxNanos, LatencyHistogram.quantileNanos(removeCounts, 0.50),
+            LatencyHistogram.quantileNanos(removeCounts, 0.99), report.removeMaxNanos);
+        out.printf(Locale.ROOT, "revenue=%.2f peak_occupied=%d at %s%n", report.revenueCents / 100.0, report.peakOccupied,
+            report.peakOccupied == 0 ? "-" : LocalDateTime.ofInstant(Instant.ofEpochMilli(report.peakTimeMillis), ZoneId.systemDefault()));
+        if (layout.getLevels().size() > 1) {
+            for (LotLayout.Level level : layout.getLevels()) {
+                out.printf(Locale.ROOT, "  level %-4d peak_occupied=%d of %d%n", level.getNumber(),
+                    report.peakByLevel[level.getIndex()], level.getSpotCount());
+            }
+        }
+        for (VehicleType type : VehicleType.values()) {
+            long typeArrivals = report.arrivalsByType[type.ordinal()];
+            if (typeArrivals > 0) {
+                out.printf(Locale.ROOT, "  %-10s arrivals=%d rejected=%d (%.2f%%)%n", type, typeArrivals,
+                    report.rejectedByType[type.ordinal()], percent(report.rejectedByType[type.ordinal()], typeArrivals));
+            }
+        }
+    }
+    
+    private static long nextArrival(long fromMillis, double perHour, Random random) {
+        double gapHours = -Math.log(1 - random.nextDouble()) / perHour;
+        return fromMillis + Math.max(1, (long) (gapHours * HOUR_MILLIS));
+    }
+    
+    private static VehicleType pickType(double[] mix, Random random) {
+        double pick = random.nextDouble();
+        for (int t = 0; t < mix.length; t++) {
+            pick -= mix[t];
+            if (pick < 0) {
+                return VehicleType.byOrdinal(t);
+            }
+        }
+        return VehicleType.CAR;
+    }
+    
+    // "7-10:2.5,16-19:2" -> a factor per hour of day, 1 outside the ranges
+    private static double[] parsePeaks(String spec) {
+        double[] factors = new double[24];
+        Arrays.fill(factors, 1.0);
+        for (String part : spec.split(",")) {
+            if (part.trim().isEmpty()) {
+                continue;
+            }
+            String[] rangeAndFactor = part.trim().split(":");
+            String[] range = rangeAndFactor[0].split("-");
+            if (rangeAndFactor.length != 2 || range.length != 2) {
+                throw new IllegalArgumentException("Expected from-to:factor in --peaks, got " + part);
+            }
+            int from = Integer.parseInt(range[0]);
+            int to = Integer.parseInt(range[1]);
+            if (from < 0 || to > 24 || from >= to) {
+                throw new IllegalArgumentException("Peak hours must satisfy 0 <= from < to <= 24, got " + part);
+            }
+            Arrays.fill(factors, from, to, Double.parseDouble(rangeAndFactor[1]));
+        }
+        return factors;
+    }
+    
+    // "car:70,truck:5" -> shares by type ordinal, summing to 1
+    private static double[] parseMix(String spec) {
+        Map<VehicleType, Double> weights = new EnumMap<>(VehicleType.class);
+        double total = 0;
+        for (String part : spec.split(",")) {
+            String[] typeAndWeight = part.trim().split(":");
+            VehicleType type = typeAndWeight.length == 2 ? VehicleType.fromName(typeAndWeight[0]) : null;
+            if (type == null) {
+                throw new IllegalArgumentException("Expected type:weight in --mix, got " + part);
+            }
+            double weight = Double.parseDouble(typeAndWeight[1]);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Mix weights cannot be negative: " + part);
+            }
+            weights.put(type, weight);
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("--mix needs at least one positive weight");
+        }
+        double[] mix = new double[VehicleType.count()];
+        for (Map.Entry<VehicleType, Double> entry : weights.entrySet()) {
+            mix[entry.getKey().ordinal()] = entry.getValue() / total;
+        }
+        return mix;
+    }
+    
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time copy of every occupied spot, tagged with the journal sequence
+ * it reflects. Recovery loads the newest snapshot and replays only the
+ * journal records after it.
+ *
+ * File layout: int magic, int version, long sequence, int capacity, int count,
+ * then per occupied spot: int spot index, long entry time millis, long
+ * amount in cents, short + bytes plate, short + bytes vehicle type; finally
+ * an int CRC32 of everything before it.
+ */
+public class ParkingSnapshot {
+    public static final String FILE_NAME = "parking.snapshot";
+    
+    private static final int MAGIC = 0x504B534E; // "PKSN"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+    
+    private final long sequence;
+    private final int capacity;
+    private final int[] spotIndices;
+    private final Vehicle[] vehicles;
+    
+    public ParkingSnapshot(long sequence, int capacity, int[] spotIndices, Vehicle[] vehicles) {
+        this.sequence = sequence;
+        this.capacity = capacity;
+        this.spotIndices = spotIndices;
+        this.vehicles = vehicles;
+    }
+    
+    // Copies the engine's occupied spots; call while the engine is quiesced for an exact cut
+    public static ParkingSnapshot capture(ParkingEngine engine, long sequence) {
+        int capacity = engine.getCapacity();
+        int count = engine.getParkedCount();
+        int[] spotIndices = new int[count];
+        Vehicle[] vehicles = new Vehicle[count];
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            Vehicle vehicle = engine.getParkedVehicle(i);
+            if (vehicle != null) {
+                spotIndices[n] = i;
+                vehicles[n] = vehicle;
+                n++;
+            }
+        }
+        if (n != count) {
+            throw new IllegalStateException("Engine changed while capturing snapshot");
+        }
+        return new ParkingSnapshot(sequence, capacity, spotIndices, vehicles);
+    }
+    
+    // Returns null when no snapshot has been written yet
+    public static ParkingSnapshot read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < HEADER_BYTES + 4) {
+            throw new IOException(file + " is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException(file + " failed its checksum");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a parking snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+        long sequence = buffer.getLong();
+        int capacity = buffer.getInt();
+        int count = buffer.getInt();
+        int[] spotIndices = new int[count];
+        Vehicle[] vehicles = new Vehicle[count];
+        for (int i = 0; i < count; i++) {
+            spotIndices[i] = buffer.getInt();
+            long entryTime = buffer.getLong();
+            long amountCents = buffer.getLong();
+            String plate = readString(buffer);
+            String typeName = readString(buffer);
+            VehicleType type = VehicleType.fromName(typeName);
+            if (type == null) {
+                throw new IOException(file + " has unknown vehicle type " + typeName);
+            }
+            vehicles[i] = new Vehicle(plate, type, amountCents, entryTime);
+        }
+        return new ParkingSnapshot(sequence, capacity, spotIndices, vehicles);
+    }
+    
+    // Written to a temp file, synced, then renamed over the old snapshot so a crash never leaves half a file
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        byte[][] plates = new byte[vehicles.length][];
+        byte[][] types = new byte[vehicles.length][];
+        int size = HEADER_BYTES + 4;
+        for (int i = 0; i < vehicles.length; i++) {
+            plates[i] = vehicles[i].getNumber().getBytes(StandardCharsets.UTF_8);
+            types[i] = vehicles[i].getType().getDisplayName().getBytes(StandardCharsets.UTF_8);
+            size += 4 + 8 + 8 + 2 + plates[i].length + 2 + types[i].length;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(capacity).putInt(vehicles.length);
+        for (int i = 0; i < vehicles.length; i++) {
+            buffer.putInt(spotIndices[i]).putLong(vehicles[i].getEntryTime()).putLong(vehicles[i].getAmountCents());
+            buffer.putShort((short) plates[i].length).put(plates[i]);
+            buffer.putShort((short) types[i].length).put(types[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    public long getSequence() { return sequence; }
+    public int getCapacity() { return capacity; }
+    public int size() { return vehicles.length; }
+    public int getSpotIndex(int i) { return spotIndices[i]; }
+    public Vehicle getVehicle(int i) { return vehicles[i]; }
+    
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
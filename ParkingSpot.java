@@ -0,0 +1,22 @@
+/**
+ * Read-only view of one bay. The engine keeps the real state in compact
+ * per-lot arrays and creates these on demand, so a 100k-spot lot does not
+ * hold 100k spot objects.
+ */
+public class ParkingSpot {
+    private final int spotNumber;
+    private final LotLayout.Zone zone;
+    private final Vehicle parkedVehicle;
+    
+    public ParkingSpot(int spotNumber, LotLayout.Zone zone, Vehicle parkedVehicle) {
+        this.spotNumber = spotNumber;
+        this.zone = zone;
+        this.parkedVehicle = parkedVehicle;
+    }
+    
+    public boolean isOccupied() { return parkedVehicle != null; }
+    public int getSpotNumber() { return spotNumber; }
+    public Vehicle getParkedVehicle() { return parkedVehicle; }
+    public LotLayout.Zone getZone() { return zone; }
+    public int getLevelNumber() { return zone.getLevel().getNumber(); }
+}
@@ -0,0 +1,182 @@
+/**
+ * Plate validation and normalization for one region, done with a single
+ * hand-rolled character scan instead of a regex.
+ *
+ * Canonical form is upper case ASCII letters and digits with separators
+ * (spaces and hyphens) removed, so "ab-12 c" and "AB12C" are the same plate.
+ * A plate that is already canonical is returned as the same String instance,
+ * so the common case (an ANPR camera sending clean plates) allocates nothing.
+ *
+ * A region may restrict plates to templates, where 'A' is a letter, '9' a
+ * digit and '*' either, e.g. UK:AA99AAA. Without templates any letters and
+ * digits within the length bounds are accepted.
+ */
+public final class PlateFormat {
+    public static final String FORMAT_PROPERTY = "parking.plateFormat";
+    
+    // The original rule: 2 or more letters/digits (capped so plates fit a spot store record)
+    public static final PlateFormat DEFAULT = new PlateFormat("Default", 2, ParkingEngine.MAX_PLATE_LENGTH, new char[0][]);
+    
+    private static final int MAX_TEMPLATES = 64; // Matching templates are tracked as bits of a long
+    private static final int CHANGED = 1 << 30;  // Flag in scan()'s result: normalization altered the input
+    private static final int INVALID = -1;
+    
+    private final String region;
+    private final int minLength;
+    private final int maxLength;
+    private final char[][] templates;
+    
+    private PlateFormat(String region, int minLength, int maxLength, char[][] templates) {
+        if (minLength < 1 || maxLength < minLength || maxLength > ParkingEngine.MAX_PLATE_LENGTH) {
+            throw new IllegalArgumentException("Plate length bounds must be within 1.." + ParkingEngine.MAX_PLATE_LENGTH);
+        }
+        if (templates.length > MAX_TEMPLATES) {
+            throw new IllegalArgumentException("At most " + MAX_TEMPLATES + " plate templates per region");
+        }
+        this.region = region;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.templates = templates;
+    }
+    
+    public static PlateFormat ofLength(String region, int minLength, int maxLength) {
+        return new PlateFormat(region, minLength, maxLength, new char[0][]);
+    }
+    
+    public static PlateFormat ofTemplates(String region, String... templates) {
+        if (templates.length == 0) {
+            throw new IllegalArgumentException("Region " + region + " needs at least one plate template");
+        }
+        char[][] compiled = new char[templates.length][];
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int i = 0; i < templates.length; i++) {
+            compiled[i] = templates[i].trim().toCharArray();
+            for (char c : compiled[i]) {
+                if (c != 'A' && c != '9' && c != '*') {
+                    throw new IllegalArgumentException("Plate template " + templates[i] + " may only use A, 9 and *");
+                }
+            }
+            min = Math.min(min, compiled[i].length);
+            max = Math.max(max, compiled[i].length);
+        }
+        return new PlateFormat(region, min, max, compiled);
+    }
+    
+    // Parses "REGION:AA99AAA,AA9AAA" (templates) or "REGION:2-8" (length bounds)
+    public static PlateFormat parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon <= 0 || colon == spec.length() - 1) {
+            throw new IllegalArgumentException("Plate format must look like REGION:TEMPLATE[,TEMPLATE] or REGION:MIN-MAX, got " + spec);
+        }
+        String region = spec.substring(0, colon).trim();
+        String rule = spec.substring(colon + 1).trim();
+        int dash = rule.indexOf('-');
+        if (dash > 0 && Character.isDigit(rule.charAt(0))) {
+            return ofLength(region, Integer.parseInt(rule.substring(0, dash).trim()), Integer.parseInt(rule.substring(dash + 1).trim()));
+        }
+        return ofTemplates(region, rule.split(","));
+    }
+    
+    // -Dparking.plateFormat=UK:AA99AAA selects a region format, otherwise DEFAULT
+    public static PlateFormat loadStartupFormat() {
+        String configured = System.getProperty(FORMAT_PROPERTY);
+        return configured == null ? DEFAULT : parse(configured);
+    }
+    
+    public String getRegion() { return region; }
+    public int getMinLength() { return minLength; }
+    public int getMaxLength() { return maxLength; }
+    
+    // Human readable rule for error messages
+    public String getDescription() {
+        if (templates.length == 0) {
+            return minLength + " to " + maxLength + " letters or digits";
+        }
+        StringBuilder description = new StringBuilder(region).append(" format ");
+        for (int i = 0; i < templates.length; i++) {
+            description.append(i == 0 ? "" : " or ").append(templates[i]);
+        }
+        return description.append(" (A = letter, 9 = digit)").toString();
+    }
+    
+    public boolean isValid(CharSequence plate) {
+        return plate != null && scan(plate, null) != INVALID;
+    }
+    
+    // Returns the canonical plate, or null when it is not valid for this region
+    public String normalize(CharSequence plate) {
+        if (plate == null) {
+            return null;
+        }
+        int result = scan(plate, null);
+        if (result == INVALID) {
+            return null;
+        }
+        if ((result & CHANGED) == 0 && plate instanceof String) {
+            return (String) plate;
+        }
+        char[] canonical = new char[result & ~CHANGED];
+        scan(plate, canonical);
+        return new String(canonical);
+    }
+    
+    /**
+     * One pass over the input: skips separators, upper-cases letters, checks
+     * every character against the templates still in play, and optionally
+     * writes the canonical characters into out. Returns the canonical length
+     * (with CHANGED set if it differs from the input) or INVALID.
+     */
+    private int scan(CharSequence plate, char[] out) {
+        long matching = templates.length == 64 ? -1L : (1L << templates.length) - 1;
+        boolean changed = false;
+        int length = 0;
+        for (int i = 0; i < plate.length(); i++) {
+            char c = plate.charAt(i);
+            if (c == ' ' || c == '-' || c == '\t') {
+                changed = true;
+                continue;
+            }
+            if (c >= 'a' && c <= 'z') {
+                c = (char) (c - ('a' - 'A'));
+                changed = true;
+            }
+            boolean letter = c >= 'A' && c <= 'Z';
+            boolean digit = c >= '0' && c <= '9';
+            if ((!letter && !digit) || length == maxLength) {
+                return INVALID;
+            }
+            
+            for (long m = matching; m != 0; m &= m - 1) {
+                int t = Long.numberOfTrailingZeros(m);
+                char[] template = templates[t];
+                if (length >= template.length
+                        || (template[length] == 'A' && !letter)
+                        || (template[length] == '9' && !digit)) {
+                    matching &= ~(1L << t);
+                }
+            }
+            if (templates.length > 0 && matching == 0) {
+                return INVALID;
+            }
+            
+            if (out != null) {
+                out[length] = c;
+            }
+            length++;
+        }
+        
+        if (length < minLength) {
+            return INVALID;
+        }
+        if (templates.length > 0) {
+            for (long m = matching; m != 0; m &= m - 1) {
+                if (templates[Long.numberOfTrailingZeros(m)].length == length) {
+                    return changed ? length | CHANGED : length;
+                }
+            }
+            return INVALID;
+        }
+        return changed ? length | CHANGED : length;
+    }
+}
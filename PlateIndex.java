@@ -0,0 +1,38 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash index from plate number to the index of the spot the vehicle is parked
+ * in. Lets lookup, duplicate checks and removal run in constant time instead
+ * of scanning every spot.
+ */
+public class PlateIndex {
+    private final ConcurrentHashMap<String, Integer> spotByPlate;
+    
+    public PlateIndex(int expectedSize) {
+        spotByPlate = new ConcurrentHashMap<>(expectedSize);
+    }
+    
+    // Returns the spot index, or -1 when the plate is not parked
+    public int get(String vehicleNumber) {
+        Integer spotIndex = spotByPlate.get(vehicleNumber);
+        return spotIndex == null ? -1 : spotIndex;
+    }
+    
+    public boolean contains(String vehicleNumber) {
+        return spotByPlate.containsKey(vehicleNumber);
+    }
+    
+    public int size() {
+        return spotByPlate.size();
+    }
+    
+    // Returns false if the plate was already indexed
+    boolean put(String vehicleNumber, int spotIndex) {
+        return spotByPlate.putIfAbsent(vehicleNumber, spotIndex) == null;
+    }
+    
+    int remove(String vehicleNumber) {
+        Integer spotIndex = spotByPlate.remove(vehicleNumber);
+        return spotIndex == null ? -1 : spotIndex;
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Search over parked plates for when the exact plate is not known: a prefix
+ * typed by an attendant, or a camera read with a character wrong, missing or
+ * extra ("AB12C" for "AB123C").
+ *
+ * Each spot keeps a 128-bit signature of its plate: every pair of adjacent
+ * characters (with start and end markers) sets one bit. Pairs are unordered,
+ * so swapping two characters keeps the pair they form, and a plate within k
+ * edits of the query then has all but at most 2k of the query's bits. A
+ * search runs down the signatures, a couple of ANDs and bit counts per spot,
+ * and compares only plates with enough bits character by character; a
+ * prefix search keeps plates having all of the prefix's bits.
+ *
+ * A spot's signature is written only by whoever holds the spot, so park and
+ * remove pay a few stores and no compare-and-set, and queries take no locks.
+ */
+public class PlateSearchIndex {
+    // Start/end marker, 26 letters, 10 digits and one code for anything else
+    private static final int SYMBOLS = 38;
+    private static final int BOUNDARY = 0;
+    private static final int WORDS = 2;      // Signature words per spot
+    private static final int BIT_SHIFT = 25; // Keeps log2(64 * WORDS) bits of a pair's hash
+    
+    public static final class Match {
+        private final String plate;
+        private final int distance;
+        
+        private Match(String plate, int distance) {
+            this.plate = plate;
+            this.distance = distance;
+        }
+        
+        public String getPlate() { return plate; }
+        // Characters changed, inserted, deleted or swapped to get from the query to the plate
+        public int getDistance() { return distance; }
+    }
+    
+    private final int capacity;
+    private final AtomicReferenceArray<String> plateBySpot;
+    private final AtomicLongArray signatures; // WORDS per spot, zero when empty
+    
+    public PlateSearchIndex(int capacity) {
+        this.capacity = capacity;
+        plateBySpot = new AtomicReferenceArray<>(capacity);
+        signatures = new AtomicLongArray(capacity * WORDS);
+    }
+    
+    // Callers serialize add and remove per spot, as the engine's allocator does
+    void add(String plate, int spotIndex) {
+        plateBySpot.set(spotIndex, plate);
+        for (int w = 0; w < WORDS; w++) {
+            signatures.set(spotIndex * WORDS + w, signatureWord(plate, true, w));
+        }
+    }
+    
+    void remove(int spotIndex) {
+        for (int w = 0; w < WORDS; w++) {
+            signatures.set(spotIndex * WORDS + w, 0);
+        }
+        plateBySpot.set(spotIndex, null);
+    }
+    
+    // Plates starting with the prefix, in plate order; the prefix is cleaned like a plate ("ab-1" finds "AB1...")
+    public List<String> withPrefix(String prefix, int limit) {
+        checkLimit(limit);
+        String start = clean(prefix);
+        List<String> found = new ArrayList<>();
+        if (start.isEmpty()) {
+            return found;
+        }
+        long[] required = signature(start, false);
+        for (int spotIndex = 0; spotIndex < capacity; spotIndex++) {
+            boolean all = true;
+            for (int w = 0; w < WORDS && all; w++) {
+                all = (signatures.get(spotIndex * WORDS + w) & required[w]) == required[w];
+            }
+            if (all) {
+                String plate = plateBySpot.get(spotIndex);
+                if (plate != null && plate.startsWith(start)) {
+                    found.add(plate);
+                }
+            }
+        }
+        Collections.sort(found);
+        return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+    }
+    
+    // Up to limit plates within maxDistance edits of the query, closest first
+    public List<Match> closest(String query, int maxDistance, int limit) {
+        checkLimit(limit);
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Distance cannot be negative: " + maxDistance);
+        }
+        String target = clean(query);
+        List<Match> matches = new ArrayList<>();
+        if (target.isEmpty()) {
+            return matches;
+        }
+        
+        // One edit, swaps included, loses at most two of the query's pairs and so at most two bits
+        long[] wanted = signature(target, true);
+        int required = -2 * maxDistance;
+        for (long word : wanted) {
+            required += Long.bitCount(word);
+        }
+        EditDistance editDistance = new EditDistance(target, maxDistance);
+        for (int spotIndex = 0; spotIndex < capacity; spotIndex++) {
+            int shared = 0;
+            long any = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = signatures.get(spotIndex * WORDS + w);
+                shared += Long.bitCount(word & wanted[w]);
+                any |= word;
+            }
+            if (any != 0 && shared >= required) {
+                addIfClose(spotIndex, editDistance, matches);
+            }
+        }
+        
+        matches.sort((a, b) -> a.distance != b.distance ? Integer.compare(a.distance, b.distance) : a.plate.compareTo(b.plate));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+    
+    private static long[] signature(String plate, boolean whole) {
+        long[] signature = new long[WORDS];
+        for (int w = 0; w < WORDS; w++) {
+            signature[w] = signatureWord(plate, whole, w);
+        }
+        return signature;
+    }
+    
+    // Bits for the plate's pairs, from the start marker on; the end marker only for a whole plate
+    private static long signatureWord(String plate, boolean whole, int word) {
+        long bits = 0;
+        int previous = BOUNDARY;
+        int end = whole ? plate.length() : plate.length() - 1;
+        for (int i = 0; i <= end; i++) {
+            int symbol = i == plate.length() ? BOUNDARY : symbol(plate.charAt(i));
+            int bit = (pair(previous, symbol) * 0x9E3779B1) >>> BIT_SHIFT; // Spreads the pairs over the signature
+            if (bit >>> 6 == word) {
+                bits |= 1L << bit;
+            }
+            previous = symbol;
+        }
+        return bits;
+    }
+    
+    // Upper case letters and digits only, the way plates are stored
+    static String clean(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder cleaned = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toUpperCase(text.charAt(i));
+            if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                cleaned.append(c);
+            }
+        }
+        return cleaned.toString();
+    }
+    
+    // The spot may have changed since its signature was read; whatever plate is there now is checked
+    private void addIfClose(int spotIndex, EditDistance editDistance, List<Match> matches) {
+        String plate = plateBySpot.get(spotIndex);
+        int distance = plate == null ? -1 : editDistance.to(plate);
+        if (distance != -1) {
+            matches.add(new Match(plate, distance));
+        }
+    }
+    
+    // Unordered, so "BC" and "CB" are the same pair
+    private static int pair(int first, int second) {
+        return Math.min(first, second) * SYMBOLS + Math.max(first, second);
+    }
+    
+    private static int symbol(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return 1 + (c - 'A');
+        }
+        if (c >= '0' && c <= '9') {
+            return 27 + (c - '0');
+        }
+        return SYMBOLS - 1;
+    }
+    
+    private static void checkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1, got " + limit);
+        }
+    }
+    
+    /**
+     * Edit distance from one query to many plates, counting a swap of two
+     * adjacent characters as one edit (a common misread). Gives up as soon
+     * as every path is over the bound; rows are reused between plates.
+     */
+    private static final class EditDistance {
+        private final String target;
+        private final int bound;
+        private int[] beforePrevious;
+        private int[] previous;
+        private int[] current;
+        
+        EditDistance(String target, int bound) {
+            this.target = target;
+            this.bound = bound;
+            allocate(target.length() + 1);
+        }
+        
+        // Returns the distance, or -1 when it is over the bound
+        int to(String plate) {
+            int n = target.length();
+            int m = plate.length();
+            if (Math.abs(n - m) > bound) {
+                return -1;
+            }
+            if (previous.length < m + 1) {
+                allocate(m + 1);
+            }
+            for (int j = 0; j <= m; j++) {
+                previous[j] = j;
+            }
+            for (int i = 1; i <= n; i++) {
+                char t = target.charAt(i - 1);
+                current[0] = i;
+                int rowMin = i;
+                for (int j = 1; j <= m; j++) {
+                    char p = plate.charAt(j - 1);
+                    int cost = t == p ? 0 : 1;
+                    int best = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                    if (i > 1 && j > 1 && t == plate.charAt(j - 2) && target.charAt(i - 2) == p) {
+                        best = Math.min(best, beforePrevious[j - 2] + 1);
+                    }
+                    current[j] = best;
+                    rowMin = Math.min(rowMin, best);
+                }
+                if (rowMin > bound) {
+                    return -1;
+                }
+                int[] recycled = beforePrevious;
+                beforePrevious = previous;
+                previous = current;
+                current = recycled;
+            }
+            return previous[m] <= bound ? previous[m] : -1;
+        }
+        
+        private void allocate(int length) {
+            beforePrevious = new int[length];
+            previous = new int[length];
+            current = new int[length];
+        }
+    }
+}
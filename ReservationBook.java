@@ -0,0 +1,369 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Advance bookings of spots for future time windows.
+ *
+ * Time is cut into fixed buckets (15 minutes by default) and each bucket that
+ * has bookings keeps a bitset of the spots held in it. Whether a spot is free
+ * over a window, and how many spots of a vehicle type's bays are, is then an
+ * OR of the window's bucket bitsets and a masked bit count, whatever the
+ * number of bookings. Windows are widened to whole buckets.
+ *
+ * A booking only takes its spot away from walk-ins shortly before it starts
+ * (an hour by default): the book claims the spot in the allocator, so
+ * acquire() skips it without knowing about bookings. If a walk-in is still
+ * in the spot by then, the booking moves to another spot that is free now and
+ * over its whole window. A hold nobody used is given back when its window
+ * ends.
+ *
+ * Bookings are kept in memory only. Time moves forward through poll(), which
+ * the engine calls with the current time before it hands out spots.
+ */
+public class ReservationBook {
+    public static final long DEFAULT_BUCKET_MILLIS = 15 * 60_000L;
+    public static final long DEFAULT_HOLD_LEAD_MILLIS = 60 * 60_000L;
+    
+    public enum State {
+        BOOKED,    // Waiting for its hold to start
+        HELD,      // Spot claimed, waiting for the vehicle
+        USED,      // The vehicle parked in its spot
+        EXPIRED,   // Window ended without the vehicle
+        CANCELLED,
+        DISPLACED  // No spot was free when the hold started
+    }
+    
+    public static final class Reservation {
+        private final long id;
+        private final String plate;
+        private final VehicleType type;
+        private final long fromMillis;
+        private final long toMillis;
+        private volatile int spotIndex;
+        private volatile State state = State.BOOKED;
+        
+        private Reservation(long id, String plate, VehicleType type, long fromMillis, long toMillis) {
+            this.id = id;
+            this.plate = plate;
+            this.type = type;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+        
+        public long getId() { return id; }
+        public String getPlate() { return plate; }
+        public VehicleType getType() { return type; }
+        public long getFromMillis() { return fromMillis; }
+        public long getToMillis() { return toMillis; }
+        public int getSpotIndex() { return spotIndex; }
+        public int getSpotNumber() { return spotIndex + 1; }
+        public State getState() { return state; }
+    }
+    
+    private final LotLayout layout;
+    private final SpotAllocator allocator;
+    private final long bucketMillis;
+    private final long holdLeadMillis;
+    private final BitSet[] spotsByBay; // [bay ordinal]: spots of that bay kind
+    
+    // All guarded by this
+    private final TreeMap<Long, BitSet> heldByBucket = new TreeMap<>();
+    private final Map<Long, Reservation> reservations = new HashMap<>();
+    private final Map<String, List<Reservation>> bookedByPlate = new HashMap<>();
+    private final Map<String, Reservation> heldByPlate = new HashMap<>();
+    private final PriorityQueue<Reservation> holdStarts;
+    private final PriorityQueue<Reservation> holdEnds = new PriorityQueue<>(Comparator.comparingLong(Reservation::getToMillis));
+    private long nextId = 1;
+    
+    private volatile long nextEventMillis = Long.MAX_VALUE;
+    private volatile int heldCount;
+    
+    public ReservationBook(LotLayout layout, SpotAllocator allocator) {
+        this(layout, allocator, DEFAULT_BUCKET_MILLIS, DEFAULT_HOLD_LEAD_MILLIS);
+    }
+    
+    public ReservationBook(LotLayout layout, SpotAllocator allocator, long bucketMillis, long holdLeadMillis) {
+        if (bucketMillis <= 0 || holdLeadMillis < 0) {
+            throw new IllegalArgumentException("Bucket length must be positive and hold lead not negative");
+        }
+        this.layout = layout;
+        this.allocator = allocator;
+        this.bucketMillis = bucketMillis;
+        this.holdLeadMillis = holdLeadMillis;
+        holdStarts = new PriorityQueue<>(Comparator.comparingLong(reservation -> reservation.fromMillis - holdLeadMillis));
+        
+        spotsByBay = new BitSet[BayType.values().length];
+        for (int i = 0; i < spotsByBay.length; i++) {
+            spotsByBay[i] = new BitSet(layout.getCapacity());
+        }
+        for (int z = 0; z < layout.getZoneCount(); z++) {
+            LotLayout.Zone zone = layout.getZone(z);
+            spotsByBay[zone.getBayType().ordinal()].set(zone.getFirstSpotIndex(), zone.getFirstSpotIndex() + zone.getSpotCount());
+        }
+    }
+    
+    // Books any spot this type fits, preferring its own bay kind; null when none is free over the window
+    public synchronized Reservation book(String plate, VehicleType type, long fromMillis, long toMillis, long nowMillis) {
+        checkWindow(plate, fromMillis, toMillis, nowMillis);
+        boolean holdDue = fromMillis - holdLeadMillis <= nowMillis;
+        BitSet held = heldDuring(fromMillis, toMillis);
+        int spotIndex = -1;
+        for (BayType bay : type.getBays()) {
+            spotIndex = pickSpot(spotsByBay[bay.ordinal()], held, holdDue);
+            if (spotIndex != -1) {
+                break;
+            }
+        }
+        return spotIndex == -1 ? null : add(new Reservation(nextId, plate, type, fromMillis, toMillis), spotIndex, holdDue);
+    }
+    
+    // Books one particular spot; null when it is booked during the window, or taken now and the hold is due
+    public synchronized Reservation bookSpot(String plate, VehicleType type, int spotIndex, long fromMillis, long toMillis, long nowMillis) {
+        checkWindow(plate, fromMillis, toMillis, nowMillis);
+        if (!type.fits(layout.zoneOf(spotIndex).getBayType())) {
+            throw new IllegalArgumentException(type + " does not fit spot " + (spotIndex + 1));
+        }
+        if (heldDuring(fromMillis, toMillis).get(spotIndex)) {
+            return null;
+        }
+        boolean holdDue = fromMillis - holdLeadMillis <= nowMillis;
+        if (holdDue && !allocator.claim(spotIndex)) {
+            return null;
+        }
+        return add(new Reservation(nextId, plate, type, fromMillis, toMillis), spotIndex, holdDue);
+    }
+    
+    // False if the booking is unknown or already over
+    public synchronized boolean cancel(long reservationId) {
+        Reservation reservation = reservations.get(reservationId);
+        if (reservation == null || (reservation.state != State.BOOKED && reservation.state != State.HELD)) {
+            return false;
+        }
+        end(reservation, State.CANCELLED);
+        return true;
+    }
+    
+    // Null once the booking's window is over
+    public synchronized Reservation get(long reservationId) {
+        return reservations.get(reservationId);
+    }
+    
+    /**
+     * Spots of the bays this type fits that no booking holds at any time in
+     * the window. Vehicles parked now are not counted against it, since when
+     * they will leave is unknown.
+     */
+    public synchronized int countAvailable(VehicleType type, long fromMillis, long toMillis) {
+        if (fromMillis >= toMillis) {
+            throw new IllegalArgumentException("Window must end after it starts");
+        }
+        BitSet held = heldDuring(fromMillis, toMillis);
+        int available = 0;
+        for (BayType bay : type.getBays()) {
+            BitSet spots = spotsByBay[bay.ordinal()];
+            BitSet taken = (BitSet) held.clone();
+            taken.and(spots);
+            available += spots.cardinality() - taken.cardinality();
+        }
+        return available;
+    }
+    
+    // Starts and ends holds that are due; a volatile read when nothing is
+    public void poll(long nowMillis) {
+        if (nowMillis >= nextEventMillis) {
+            advance(nowMillis);
+        }
+    }
+    
+    /**
+     * Hands the plate's held spot over to the caller, who must park the
+     * vehicle in it (or release it). Null when the plate has no hold for this
+     * type right now.
+     */
+    public Reservation takeHold(String plate, VehicleType type) {
+        if (heldCount == 0) {
+            return null;
+        }
+        synchronized (this) {
+            Reservation reservation = heldByPlate.get(plate);
+            if (reservation == null || reservation.type != type) {
+                return null;
+            }
+            heldByPlate.remove(plate);
+            heldCount--;
+            unbook(reservation);
+            reservation.state = State.USED; // Its bits stay set, so nobody else books the spot during the window
+            return reservation;
+        }
+    }
+    
+    /**
+     * Undoes takeHold when the vehicle could not be parked after all, e.g.
+     * the journal failed. The spot must still be claimed; it stays held for
+     * the plate, or is released if the window ended in the meantime.
+     */
+    public synchronized void returnHold(Reservation reservation) {
+        if (reservation.state != State.USED) {
+            throw new IllegalStateException("Reservation " + reservation.id + " was not taken");
+        }
+        bookedByPlate.computeIfAbsent(reservation.plate, plate -> new ArrayList<>(1)).add(reservation);
+        reservation.state = State.HELD;
+        heldByPlate.put(reservation.plate, reservation);
+        heldCount++;
+        if (!reservations.containsKey(reservation.id)) {
+            end(reservation, State.EXPIRED); // advance() already passed its end
+        }
+    }
+    
+    private synchronized void advance(long nowMillis) {
+        Reservation next;
+        while ((next = holdStarts.peek()) != null && next.fromMillis - holdLeadMillis <= nowMillis) {
+            holdStarts.poll();
+            if (next.state == State.BOOKED) {
+                startHold(next);
+            }
+        }
+        while ((next = holdEnds.peek()) != null && next.toMillis <= nowMillis) {
+            holdEnds.poll();
+            if (next.state == State.BOOKED || next.state == State.HELD) {
+                end(next, State.EXPIRED);
+            }
+            reservations.remove(next.id); // Callers holding it still see its final state
+        }
+        // Buckets wholly in the past can no longer be booked or queried usefully
+        heldByBucket.headMap(Math.floorDiv(nowMillis, bucketMillis)).clear();
+        updateNextEvent();
+    }
+    
+    private void startHold(Reservation reservation) {
+        if (!allocator.claim(reservation.spotIndex)) {
+            // A walk-in is still there; move to a spot that is free now and over the whole window
+            int booked = reservation.spotIndex;
+            clearHeld(reservation);
+            int moved = -1;
+            BitSet held = heldDuring(reservation.fromMillis, reservation.toMillis);
+            for (BayType bay : reservation.type.getBays()) {
+                moved = pickSpot(spotsByBay[bay.ordinal()], held, true);
+                if (moved != -1) {
+                    break;
+                }
+            }
+            if (moved == -1) {
+                reservation.spotIndex = booked;
+                reservation.state = State.DISPLACED;
+                unbook(reservation);
+                return;
+            }
+            reservation.spotIndex = moved;
+            setHeld(reservation);
+        }
+        reservation.state = State.HELD;
+        heldByPlate.put(reservation.plate, reservation);
+        heldCount++;
+    }
+    
+    private void end(Reservation reservation, State state) {
+        if (reservation.state == State.HELD) {
+            allocator.release(reservation.spotIndex);
+            heldByPlate.remove(reservation.plate);
+            heldCount--;
+        }
+        clearHeld(reservation);
+        unbook(reservation);
+        reservation.state = state;
+    }
+    
+    // claimed: the spot was already claimed because the hold is due
+    private Reservation add(Reservation reservation, int spotIndex, boolean claimed) {
+        nextId++;
+        reservation.spotIndex = spotIndex;
+        reservations.put(reservation.id, reservation);
+        bookedByPlate.computeIfAbsent(reservation.plate, plate -> new ArrayList<>(1)).add(reservation);
+        setHeld(reservation);
+        holdEnds.add(reservation);
+        if (claimed) {
+            reservation.state = State.HELD;
+            heldByPlate.put(reservation.plate, reservation);
+            heldCount++;
+        } else {
+            holdStarts.add(reservation);
+        }
+        updateNextEvent();
+        return reservation;
+    }
+    
+    private void checkWindow(String plate, long fromMillis, long toMillis, long nowMillis) {
+        if (fromMillis >= toMillis) {
+            throw new IllegalArgumentException("Booking must end after it starts");
+        }
+        if (toMillis <= nowMillis) {
+            throw new IllegalArgumentException("Booking is already over");
+        }
+        List<Reservation> booked = bookedByPlate.get(plate);
+        if (booked != null) {
+            for (Reservation other : booked) {
+                if (other.fromMillis < toMillis && fromMillis < other.toMillis) {
+                    throw new IllegalArgumentException(plate + " is already booked from " + other.fromMillis + " to " + other.toMillis);
+                }
+            }
+        }
+    }
+    
+    // First spot of the bay that is not held; with claimNow it must also be free now, and is claimed
+    private int pickSpot(BitSet baySpots, BitSet held, boolean claimNow) {
+        for (int i = baySpots.nextSetBit(0); i >= 0; i = baySpots.nextSetBit(i + 1)) {
+            if (!held.get(i) && (!claimNow || allocator.claim(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    // Spots held in any bucket the window touches
+    private BitSet heldDuring(long fromMillis, long toMillis) {
+        BitSet held = new BitSet();
+        for (BitSet bucket : heldByBucket.subMap(Math.floorDiv(fromMillis, bucketMillis), true, Math.floorDiv(toMillis - 1, bucketMillis), true).values()) {
+            held.or(bucket);
+        }
+        return held;
+    }
+    
+    private void setHeld(Reservation reservation) {
+        long last = Math.floorDiv(reservation.toMillis - 1, bucketMillis);
+        for (long bucket = Math.floorDiv(reservation.fromMillis, bucketMillis); bucket <= last; bucket++) {
+            heldByBucket.computeIfAbsent(bucket, b -> new BitSet()).set(reservation.spotIndex);
+        }
+    }
+    
+    private void clearHeld(Reservation reservation) {
+        for (BitSet bucket : heldByBucket.subMap(Math.floorDiv(reservation.fromMillis, bucketMillis), true, Math.floorDiv(reservation.toMillis - 1, bucketMillis), true).values()) {
+            bucket.clear(reservation.spotIndex);
+        }
+    }
+    
+    private void unbook(Reservation reservation) {
+        List<Reservation> booked = bookedByPlate.get(reservation.plate);
+        if (booked != null && booked.remove(reservation) && booked.isEmpty()) {
+            bookedByPlate.remove(reservation.plate);
+        }
+    }
+    
+    private void updateNextEvent() {
+        long next = Long.MAX_VALUE;
+        Reservation start = holdStarts.peek();
+        if (start != null) {
+            next = start.fromMillis - holdLeadMillis;
+        }
+        Reservation end = holdEnds.peek();
+        if (end != null) {
+            next = Math.min(next, end.toMillis);
+        }
+        nextEventMillis = next;
+    }
+}
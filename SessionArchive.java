@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only history of finished parking sessions (plate, type, spot, entry,
+ * exit, fee), for revenue reports and dwell-time analysis.
+ *
+ * Sessions are stored by column in fixed-size chunks of primitive arrays, with
+ * plates interned into a dictionary, so tens of millions of sessions cost
+ * about 33 bytes each and a query only touches the columns it needs. Each
+ * chunk remembers its earliest and latest exit time, letting time-bounded
+ * scans skip whole chunks; the rest are scanned in parallel, one chunk per
+ * task. A chunk is appended to under a lock but readers never take it: they
+ * only look at rows below the chunk's published size.
+ *
+ * Hourly occupancy, revenue per day and dwell per type are also kept up to
+ * date as sessions are appended, so reading them costs nothing.
+ *
+ * On disk each chunk is a file sessions-&lt;chunk&gt;.bin: int magic, int
+ * version, long journal sequence, int count, then the columns (bytes type,
+ * ints spot, longs entry, longs exit, longs fee, ints plate id), then int
+ * plate count with short + bytes per plate, then an int CRC32. The last file
+ * is rewritten as its chunk fills; its sequence is the newest journal record
+ * the archive includes.
+ */
+public class SessionArchive {
+    static final int CHUNK_SESSIONS = 1 << 16;
+    
+    private static final String FILE_PREFIX = "sessions-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final int MAGIC = 0x504B5341; // "PKSA"
+    private static final int VERSION = 1;
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    
+    // One finished session, as returned by lookups
+    public static final class Session {
+        private final String plate;
+        private final VehicleType type;
+        private final int spotIndex;
+        private final long entryMillis;
+        private final long exitMillis;
+        private final long feeCents;
+        
+        Session(String plate, VehicleType type, int spotIndex, long entryMillis, long exitMillis, long feeCents) {
+            this.plate = plate;
+            this.type = type;
+            this.spotIndex = spotIndex;
+            this.entryMillis = entryMillis;
+            this.exitMillis = exitMillis;
+            this.feeCents = feeCents;
+        }
+        
+        public String getPlate() { return plate; }
+        public VehicleType getType() { return type; }
+        public int getSpotNumber() { return spotIndex + 1; }
+        public long getEntryMillis() { return entryMillis; }
+        public long getExitMillis() { return exitMillis; }
+        public long getFeeCents() { return feeCents; }
+    }
+    
+    private static final class Chunk {
+        final byte[] types = new byte[CHUNK_SESSIONS];
+        final int[] spots = new int[CHUNK_SESSIONS];
+        final long[] entries = new long[CHUNK_SESSIONS];
+        final long[] exits = new long[CHUNK_SESSIONS];
+        final long[] fees = new long[CHUNK_SESSIONS];
+        final int[] plateIds = new int[CHUNK_SESSIONS];
+        long minExit = Long.MAX_VALUE; // Written before size, so readers that saw size see them too
+        long maxExit = Long.MIN_VALUE;
+        volatile int size;
+        
+        boolean overlaps(long fromMillis, long toMillis) {
+            return size > 0 && minExit < toMillis && maxExit >= fromMillis; // size read first, see above
+        }
+    }
+    
+    // Dense long counters keyed by hour or day number, grown in either direction as keys arrive
+    private static final class Series {
+        long firstKey;
+        long[] values = new long[0];
+        
+        void add(long key, long delta) {
+            if (values.length == 0) {
+                firstKey = key;
+                values = new long[16];
+            } else if (key < firstKey) {
+                int shift = (int) Math.max(firstKey - key, values.length);
+                long[] grown = new long[values.length + shift];
+                System.arraycopy(values, 0, grown, shift, values.length);
+                values = grown;
+                firstKey -= shift;
+            } else if (key - firstKey >= values.length) {
+                values = Arrays.copyOf(values, (int) Math.max(key - firstKey + 1, values.length * 2L));
+            }
+            values[(int) (key - firstKey)] += delta;
+        }
+        
+        long get(long key) {
+            long index = key - firstKey;
+            return index < 0 || index >= values.length ? 0 : values[(int) index];
+        }
+    }
+    
+    private final ZoneRules zoneRules;
+    private final long fixedOffsetMillis; // Used when the zone has no daylight saving
+    
+    // Guarded by this
+    private final Map<String, Integer> plateIds = new HashMap<>();
+    private final Series occupiedMillisByHour = new Series();
+    private final Series revenueByDay = new Series();
+    private final long[] dwellMillisByType = new long[VehicleType.count()];
+    private final long[] sessionsByType = new long[VehicleType.count()];
+    
+    // Written only by append; readers see every entry a published row refers to
+    private volatile String[] plates = new String[1024];
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile long size;
+    
+    // Guarded by writeLock
+    private final Object writeLock = new Object();
+    private int writtenChunks; // Chunks already on disk in full
+    private volatile long sequence;
+    
+    public SessionArchive(ZoneId zone) {
+        zoneRules = zone.getRules();
+        fixedOffsetMillis = zoneRules.isFixedOffset() ? zoneRules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L : 0;
+    }
+    
+    // Loads every chunk in directory; an empty archive when there are none
+    public static SessionArchive open(Path directory, ZoneId zone) throws IOException {
+        SessionArchive archive = new SessionArchive(zone);
+        List<Path> files = listChunkFiles(directory);
+        for (int i = 0; i < files.size(); i++) {
+            long fileSequence = archive.readChunk(files.get(i));
+            if (i + 1 < files.size() && archive.size != (long) (i + 1) * CHUNK_SESSIONS) {
+                throw new IOException(files.get(i) + " is not full but is not the last chunk");
+            }
+            archive.sequence = fileSequence;
+        }
+        archive.writtenChunks = Math.max(0, files.size() - 1);
+        return archive;
+    }
+    
+    public synchronized void append(String plate, VehicleType type, int spotIndex, long entryMillis, long exitMillis, long feeCents) {
+        Chunk[] current = chunks;
+        Chunk chunk = current.length == 0 ? null : current[current.length - 1];
+        if (chunk == null || chunk.size == CHUNK_SESSIONS) {
+            chunk = new Chunk();
+            Chunk[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = chunk;
+            chunks = grown;
+        }
+        int row = chunk.size;
+        chunk.types[row] = (byte) type.ordinal();
+        chunk.spots[row] = spotIndex;
+        chunk.entries[row] = entryMillis;
+        chunk.exits[row] = exitMillis;
+        chunk.fees[row] = feeCents;
+        chunk.plateIds[row] = plateId(plate);
+        chunk.minExit = Math.min(chunk.minExit, exitMillis);
+        chunk.maxExit = Math.max(chunk.maxExit, exitMillis);
+        chunk.size = row + 1;
+        size++;
+        
+        long dwell = Math.max(0, exitMillis - entryMillis);
+        dwellMillisByType[type.ordinal()] += dwell;
+        sessionsByType[type.ordinal()]++;
+        revenueByDay.add(dayOf(exitMillis), feeCents);
+        for (long hour = Math.floorDiv(entryMillis, HOUR_MILLIS); hour * HOUR_MILLIS < exitMillis; hour++) {
+            long start = Math.max(entryMillis, hour * HOUR_MILLIS);
+            long end = Math.min(exitMillis, (hour + 1) * HOUR_MILLIS);
+            occupiedMillisByHour.add(hour, end - start);
+        }
+    }
+    
+    public long size() {
+        return size;
+    }
+    
+    // Newest journal sequence whose removal is in the archive on disk
+    public long getSequence() {
+        return sequence;
+    }
+    
+    // Average number of vehicles parked in each clock hour (UTC-aligned) from fromMillis to toMillis
+    public synchronized double[] getOccupancyByHour(long fromMillis, long toMillis) {
+        long firstHour = Math.floorDiv(fromMillis, HOUR_MILLIS);
+        int hours = (int) Math.max(0, Math.floorDiv(toMillis - 1, HOUR_MILLIS) - firstHour + 1);
+        double[] occupancy = new double[hours];
+        for (int i = 0; i < hours; i++) {
+            occupancy[i] = occupiedMillisByHour.get(firstHour + i) / (double) HOUR_MILLIS;
+        }
+        return occupancy;
+    }
+    
+    // Fees by the local day the vehicle left
+    public synchronized SortedMap<LocalDate, Long> getRevenueByDay() {
+        SortedMap<LocalDate, Long> revenue = new TreeMap<>();
+        for (int i = 0; i < revenueByDay.values.length; i++) {
+            if (revenueByDay.values[i] != 0) {
+                revenue.put(LocalDate.ofEpochDay(revenueByDay.firstKey + i), revenueByDay.values[i]);
+            }
+        }
+        return revenue;
+    }
+    
+    // 0 when no session of this type has finished
+    public synchronized long getAverageDwellMillis(VehicleType type) {
+        long sessions = sessionsByType[type.ordinal()];
+        return sessions == 0 ? 0 : dwellMillisByType[type.ordinal()] / sessions;
+    }
+    
+    // Fees of sessions that ended in [fromMillis, toMillis)
+    public long revenueCents(long fromMillis, long toMillis) {
+        return Arrays.stream(chunks).parallel()
+            .filter(chunk -> chunk.overlaps(fromMillis, toMillis))
+            .mapToLong(chunk -> {
+                int rows = chunk.size;
+                long cents = 0;
+                for (int row = 0; row < rows; row++) {
+                    long exit = chunk.exits[row];
+                    if (exit >= fromMillis && exit < toMillis) {
+                        cents += chunk.fees[row];
+                    }
+                }
+                return cents;
+            })
+            .sum();
+    }
+    
+    // Dwell times in millis of sessions of this type (null for all types) that ended in [fromMillis, toMillis)
+    public LongSummaryStatistics dwellStatistics(VehicleType type, long fromMillis, long toMillis) {
+        int typeOrdinal = type == null ? -1 : type.ordinal();
+        return Arrays.stream(chunks).parallel()
+            .filter(chunk -> chunk.overlaps(fromMillis, toMillis))
+            .map(chunk -> {
+                int rows = chunk.size;
+                LongSummaryStatistics statistics = new LongSummaryStatistics();
+                for (int row = 0; row < rows; row++) {
+                    long exit = chunk.exits[row];
+                    if (exit >= fromMillis && exit < toMillis && (typeOrdinal == -1 || chunk.types[row] == typeOrdinal)) {
+                        statistics.accept(exit - chunk.entries[row]);
+                    }
+                }
+                return statistics;
+            })
+            .reduce(new LongSummaryStatistics(), (a, b) -> {
+                LongSummaryStatistics combined = new LongSummaryStatistics();
+                combined.combine(a);
+                combined.combine(b);
+                return combined;
+            });
+    }
+    
+    // Every finished session of a plate, oldest first
+    public List<Session> sessionsOf(String plate) {
+        Integer id;
+        synchronized (this) {
+            id = plateIds.get(plate);
+        }
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        int plateId = id;
+        String[] names = plates;
+        List<Session> sessions = new ArrayList<>();
+        Arrays.stream(chunks).parallel()
+            .map(chunk -> {
+                int rows = chunk.size;
+                List<Session> found = new ArrayList<>();
+                for (int row = 0; row < rows; row++) {
+                    if (chunk.plateIds[row] == plateId) {
+                        found.add(new Session(names[plateId], VehicleType.byOrdinal(chunk.types[row]), chunk.spots[row],
+                            chunk.entries[row], chunk.exits[row], chunk.fees[row]));
+                    }
+                }
+                return found;
+            })
+            .forEachOrdered(sessions::addAll);
+        return sessions;
+    }
+    
+    /**
+     * Writes the first rows sessions to directory, tagged with the journal
+     * sequence they cover. Full chunks are written once; the last one is
+     * rewritten each time. Rows below the count are never changed again, so
+     * this runs without blocking appends.
+     */
+    public void write(Path directory, long rows, long journalSequence) throws IOException {
+        synchronized (writeLock) {
+            Files.createDirectories(directory);
+            if (rows == 0) {
+                sequence = journalSequence;
+                return;
+            }
+            Chunk[] current = chunks;
+            int lastChunk = (int) ((rows - 1) / CHUNK_SESSIONS);
+            String[] names = plates;
+            for (int c = writtenChunks; c <= lastChunk && c < current.length; c++) {
+                int count = (int) Math.min(CHUNK_SESSIONS, rows - (long) c * CHUNK_SESSIONS);
+                writeChunk(directory, c, current[c], count, names, journalSequence);
+                if (count == CHUNK_SESSIONS) {
+                    writtenChunks = c + 1;
+                }
+            }
+            sequence = journalSequence;
+        }
+    }
+    
+    private int plateId(String plate) {
+        Integer id = plateIds.get(plate);
+        if (id != null) {
+            return id;
+        }
+        int next = plateIds.size();
+        String[] names = plates;
+        if (next == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[next] = plate;
+        plates = names; // Republished so readers see the new entry
+        plateIds.put(plate, next);
+        return next;
+    }
+    
+    private long dayOf(long epochMillis) {
+        long offsetMillis = zoneRules.isFixedOffset() ? fixedOffsetMillis
+            : zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        return Math.floorDiv(epochMillis + offsetMillis, DAY_MILLIS);
+    }
+    
+    // Written to a temp file, synced, then renamed, like the snapshot
+    private static void writeChunk(Path directory, int chunkIndex, Chunk chunk, int count, String[] names, long journalSequence) throws IOException {
+        // Each file carries its own plate dictionary so chunks can be read on their own
+        Map<Integer, Integer> localIds = new HashMap<>();
+        List<byte[]> localPlates = new ArrayList<>();
+        int[] plateColumn = new int[count];
+        int platesBytes = 4;
+        for (int row = 0; row < count; row++) {
+            Integer local = localIds.get(chunk.plateIds[row]);
+            if (local == null) {
+                local = localPlates.size();
+                localIds.put(chunk.plateIds[row], local);
+                byte[] bytes = names[chunk.plateIds[row]].getBytes(StandardCharsets.UTF_8);
+                localPlates.add(bytes);
+                platesBytes += 2 + bytes.length;
+            }
+            plateColumn[row] = local;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 4 + count * (1 + 4 + 8 + 8 + 8 + 4) + platesBytes + 4);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(journalSequence).putInt(count);
+        buffer.put(chunk.types, 0, count);
+        buffer.asIntBuffer().put(chunk.spots, 0, count);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asLongBuffer().put(chunk.entries, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asLongBuffer().put(chunk.exits, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asLongBuffer().put(chunk.fees, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asIntBuffer().put(plateColumn, 0, count);
+        buffer.position(buffer.position() + count * 4);
+        buffer.putInt(localPlates.size());
+        for (byte[] plate : localPlates) {
+            buffer.putShort((short) plate.length).put(plate);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        
+        String name = String.format("%s%06d%s", FILE_PREFIX, chunkIndex, FILE_SUFFIX);
+        Path temp = directory.resolve(name + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    // Appends the file's sessions and returns its journal sequence
+    private long readChunk(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < 4 + 4 + 8 + 4 + 4 + 4) {
+            throw new IOException(file + " is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException(file + " failed its checksum");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a session archive chunk");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+        long fileSequence = buffer.getLong();
+        int count = buffer.getInt();
+        if (count < 0 || count > CHUNK_SESSIONS) {
+            throw new IOException(file + " has " + count + " sessions, more than a chunk holds");
+        }
+        byte[] types = new byte[count];
+        int[] spots = new int[count];
+        long[] entries = new long[count];
+        long[] exits = new long[count];
+        long[] fees = new long[count];
+        int[] plateColumn = new int[count];
+        buffer.get(types);
+        buffer.asIntBuffer().get(spots);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asLongBuffer().get(entries);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asLongBuffer().get(exits);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asLongBuffer().get(fees);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asIntBuffer().get(plateColumn);
+        buffer.position(buffer.position() + count * 4);
+        String[] localPlates = new String[buffer.getInt()];
+        for (int i = 0; i < localPlates.length; i++) {
+            byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            localPlates[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        for (int row = 0; row < count; row++) {
+            if (types[row] < 0 || types[row] >= VehicleType.count() || plateColumn[row] < 0 || plateColumn[row] >= localPlates.length) {
+                throw new IOException(file + " has a corrupt session at row " + row);
+            }
+            append(localPlates[plateColumn[row]], VehicleType.byOrdinal(types[row]), spots[row], entries[row], exits[row], fees[row]);
+        }
+        return fileSequence;
+    }
+    
+    private static List<Path> listChunkFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files); // Zero-padded chunk numbers sort in order
+        return files;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Hands out free spot indices without scanning the whole lot. Implementations
+ * rank spots by preference (e.g. nearest to the entrance first) and always
+ * return the best-ranked free spot they can find.
+ *
+ * The type-aware methods default to treating every spot as fitting every
+ * vehicle; SpotPools overrides them to keep each type to its own bays.
+ */
+public interface SpotAllocator {
+    // Returns a free spot index and marks it taken, or -1 when the lot is full
+    int acquire();
+    
+    // Like acquire(), but only hands out a spot this vehicle type fits
+    default int acquire(VehicleType type) {
+        return acquire();
+    }
+    
+    // Like acquire(type), but for a vehicle entering at the given gate of LotLayout.getGates(); -1 means unknown
+    default int acquireNear(VehicleType type, int gateIndex) {
+        return acquire(type);
+    }
+    
+    default int acquireNear(int gateIndex) {
+        return acquire();
+    }
+    
+    // Marks a specific spot taken, e.g. when restoring saved state; false if already taken
+    boolean claim(int spotIndex);
+    
+    void release(int spotIndex);
+    
+    int freeCount();
+    
+    // Free spots this vehicle type could be given
+    default int freeCount(VehicleType type) {
+        return freeCount();
+    }
+    
+    int capacity();
+}
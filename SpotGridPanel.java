@@ -0,0 +1,101 @@
+import javax.swing.*;
+import javax.swing.border.*;
+import java.awt.*;
+import java.util.Objects;
+
+/**
+ * Spot grid that keeps one painted tile per spot for the life of the frame.
+ * A park or remove only updates and repaints the tile whose spot changed,
+ * instead of rebuilding every panel, label and font in the grid.
+ */
+public class SpotGridPanel extends JPanel implements SpotView {
+    // Shared by every tile instead of created per spot per refresh
+    private static final Font SPOT_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font NUMBER_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font TYPE_FONT = new Font("Arial", Font.BOLD, 11);
+    
+    private final ParkingEngine engine;
+    private final SpotTile[] tiles;
+    private final Color freeSpotColor;
+    private final Color occupiedSpotColor;
+    private final Color textColor;
+    
+    public SpotGridPanel(ParkingEngine engine, Color freeSpotColor, Color occupiedSpotColor, Color textColor) {
+        super(new GridLayout(0, engine.getLayout().getMaxColumns(), 10, 10));
+        this.engine = engine;
+        this.freeSpotColor = freeSpotColor;
+        this.occupiedSpotColor = occupiedSpotColor;
+        this.textColor = textColor;
+        
+        Border tileBorder = BorderFactory.createLineBorder(textColor, 2); // One border for all tiles
+        tiles = new SpotTile[engine.getCapacity()];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new SpotTile(i + 1);
+            tiles[i].setBorder(tileBorder);
+            tiles[i].update(engine.getParkedVehicle(i));
+            add(tiles[i]);
+        }
+    }
+    
+    // Repaints a single spot if its vehicle changed
+    @Override
+    public void refreshSpot(int spotIndex) {
+        tiles[spotIndex].update(engine.getParkedVehicle(spotIndex));
+    }
+    
+    // Walks every spot but only repaints the ones that changed; no components are rebuilt
+    @Override
+    public void refreshAll() {
+        OccupancySnapshots.Snapshot occupancy = engine.getOccupancySnapshot();
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i].update(occupancy.getVehicle(i));
+        }
+    }
+    
+    private class SpotTile extends JComponent {
+        private final String spotText;
+        private Vehicle vehicle;
+        private String typeText;
+        
+        SpotTile(int spotNumber) {
+            spotText = "Spot " + spotNumber;
+            setOpaque(true);
+        }
+        
+        void update(Vehicle current) {
+            if (Objects.equals(current, vehicle)) {
+                return;
+            }
+            vehicle = current;
+            // Formatted once per change rather than on every paint
+            typeText = current == null ? null
+                : current.getType() + " ($" + String.format("%.2f", current.getAmountCents() / 100.0) + ")";
+            repaint();
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            Insets insets = getInsets();
+            int width = getWidth() - insets.left - insets.right;
+            
+            g.setColor(vehicle != null ? occupiedSpotColor : freeSpotColor);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            
+            g.setColor(textColor);
+            int y = insets.top + drawCentered(g, SPOT_FONT, spotText, insets.left, width, insets.top);
+            
+            if (vehicle != null) {
+                y += drawCentered(g, NUMBER_FONT, vehicle.getNumber(), insets.left, width, y + 2);
+                drawCentered(g, TYPE_FONT, typeText, insets.left, width, y + 2);
+            }
+        }
+        
+        // Draws one centered line below top and returns its height
+        private int drawCentered(Graphics g, Font font, String text, int left, int width, int top) {
+            g.setFont(font);
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(text, left + (width - metrics.stringWidth(text)) / 2, top + metrics.getAscent());
+            return metrics.getHeight();
+        }
+    }
+}
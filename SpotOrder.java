@@ -0,0 +1,45 @@
+import java.util.Arrays;
+
+// Helpers for the rank order allocators use to prefer some spots over others
+public final class SpotOrder {
+    private SpotOrder() {
+    }
+    
+    // Spot 0 first, then 1, 2, ... (the old findAvailableSpot behaviour)
+    public static int[] identity(int capacity) {
+        int[] order = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+    
+    // The order restricted to a subset of spots (ascending spot indices), as positions in that subset
+    public static int[] restrict(int[] order, int[] spots) {
+        int[] restricted = new int[spots.length];
+        int filled = 0;
+        for (int spot : order) {
+            int position = Arrays.binarySearch(spots, spot);
+            if (position >= 0) {
+                restricted[filled++] = position;
+            }
+        }
+        if (filled != spots.length) {
+            throw new IllegalArgumentException("Spot order does not cover all " + spots.length + " spots");
+        }
+        return restricted;
+    }
+    
+    static int[] invert(int[] rankToSpot) {
+        int[] spotToRank = new int[rankToSpot.length];
+        Arrays.fill(spotToRank, -1);
+        for (int rank = 0; rank < rankToSpot.length; rank++) {
+            int spot = rankToSpot[rank];
+            if (spot < 0 || spot >= rankToSpot.length || spotToRank[spot] != -1) {
+                throw new IllegalArgumentException("Spot order must be a permutation of 0.." + (rankToSpot.length - 1));
+            }
+            spotToRank[spot] = rank;
+        }
+        return spotToRank;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.function.Function;
+
+/**
+ * Allocator split into one pool per bay kind, so a vehicle only ever searches
+ * bays it fits. Each pool is a lock-free allocator over its own dense index
+ * range; spots are mapped to and from pool-local indices with two arrays.
+ *
+ * Free counts live in the pools and change with every acquire/release, so the
+ * free count for a vehicle type is the sum over its few compatible pools.
+ */
+public class SpotPools implements SpotAllocator {
+    private final SpotAllocator[] pools;  // By BayType ordinal, null when the lot has no such bays
+    private final int[][] poolToSpot;     // By BayType ordinal: local index -> spot index
+    private final byte[] spotBay;         // Spot index -> BayType ordinal
+    private final int[] spotToLocal;
+    
+    // Spots in index order, or nearest to the entry gate when the layout has gates
+    public SpotPools(LotLayout layout) {
+        this(layout, layout.getGates().isEmpty() ? spots -> new LockFreeSpotAllocator(spots.length)
+            : spots -> new GateSpotAllocator(layout, spots, GateSpotAllocator.Policy.NEAREST));
+    }
+    
+    // entranceOrder ranks all spots; each pool keeps that ranking among its own spots
+    public SpotPools(LotLayout layout, int[] entranceOrder) {
+        this(layout, checkedOrder(layout, entranceOrder));
+    }
+    
+    public SpotPools(LotLayout layout, GateSpotAllocator.Policy policy) {
+        this(layout, spots -> new GateSpotAllocator(layout, spots, policy));
+    }
+    
+    // The factory gets each pool's spot indices, ascending, and returns an allocator over their positions
+    public SpotPools(LotLayout layout, Function<int[], SpotAllocator> poolFactory) {
+        int capacity = layout.getCapacity();
+        BayType[] bayTypes = BayType.values();
+        spotBay = new byte[capacity];
+        spotToLocal = new int[capacity];
+        int[] sizes = new int[bayTypes.length];
+        for (int z = 0; z < layout.getZoneCount(); z++) {
+            LotLayout.Zone zone = layout.getZone(z);
+            int bay = zone.getBayType().ordinal();
+            for (int i = zone.getFirstSpotIndex(); i < zone.getFirstSpotIndex() + zone.getSpotCount(); i++) {
+                spotBay[i] = (byte) bay;
+                spotToLocal[i] = sizes[bay]++;
+            }
+        }
+        
+        poolToSpot = new int[bayTypes.length][];
+        for (int bay = 0; bay < bayTypes.length; bay++) {
+            if (sizes[bay] > 0) {
+                poolToSpot[bay] = new int[sizes[bay]];
+            }
+        }
+        for (int i = 0; i < capacity; i++) {
+            poolToSpot[spotBay[i]][spotToLocal[i]] = i;
+        }
+        
+        pools = new SpotAllocator[bayTypes.length];
+        for (int bay = 0; bay < bayTypes.length; bay++) {
+            if (sizes[bay] > 0) {
+                pools[bay] = poolFactory.apply(poolToSpot[bay].clone());
+                if (pools[bay].capacity() != sizes[bay]) {
+                    throw new IllegalArgumentException("Pool for " + bayTypes[bay] + " bays covers " + pools[bay].capacity() + " spots instead of " + sizes[bay]);
+                }
+            }
+        }
+    }
+    
+    // Any free spot, trying bay kinds in declaration order (standard bays first)
+    @Override
+    public int acquire() {
+        for (int bay = 0; bay < pools.length; bay++) {
+            int spot = acquireFrom(bay);
+            if (spot != -1) {
+                return spot;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public int acquire(VehicleType type) {
+        for (BayType bayType : type.getBays()) {
+            int spot = acquireFrom(bayType.ordinal());
+            if (spot != -1) {
+                return spot;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public int acquireNear(int gateIndex) {
+        for (int bay = 0; bay < pools.length; bay++) {
+            int spot = acquireFrom(bay, gateIndex);
+            if (spot != -1) {
+                return spot;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public int acquireNear(VehicleType type, int gateIndex) {
+        for (BayType bayType : type.getBays()) {
+            int spot = acquireFrom(bayType.ordinal(), gateIndex);
+            if (spot != -1) {
+                return spot;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean claim(int spotIndex) {
+        return pools[spotBay[spotIndex]].claim(spotToLocal[spotIndex]);
+    }
+    
+    @Override
+    public void release(int spotIndex) {
+        pools[spotBay[spotIndex]].release(spotToLocal[spotIndex]);
+    }
+    
+    @Override
+    public int freeCount() {
+        int free = 0;
+        for (SpotAllocator pool : pools) {
+            if (pool != null) {
+                free += pool.freeCount();
+            }
+        }
+        return free;
+    }
+    
+    @Override
+    public int freeCount(VehicleType type) {
+        int free = 0;
+        for (BayType bayType : type.getBays()) {
+            free += freeCount(bayType);
+        }
+        return free;
+    }
+    
+    public int freeCount(BayType bayType) {
+        SpotAllocator pool = pools[bayType.ordinal()];
+        return pool == null ? 0 : pool.freeCount();
+    }
+    
+    @Override
+    public int capacity() {
+        return spotBay.length;
+    }
+    
+    private int acquireFrom(int bay) {
+        SpotAllocator pool = pools[bay];
+        if (pool == null) {
+            return -1;
+        }
+        int local = pool.acquire();
+        return local == -1 ? -1 : poolToSpot[bay][local];
+    }
+    
+    private int acquireFrom(int bay, int gateIndex) {
+        SpotAllocator pool = pools[bay];
+        if (pool == null) {
+            return -1;
+        }
+        int local = pool.acquireNear(gateIndex);
+        return local == -1 ? -1 : poolToSpot[bay][local];
+    }
+    
+    private static Function<int[], SpotAllocator> checkedOrder(LotLayout layout, int[] entranceOrder) {
+        if (entranceOrder.length != layout.getCapacity()) {
+            throw new IllegalArgumentException("Spot order covers " + entranceOrder.length + " spots but the lot has " + layout.getCapacity());
+        }
+        return spots -> new LockFreeSpotAllocator(SpotOrder.restrict(entranceOrder, spots));
+    }
+}
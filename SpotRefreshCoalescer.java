@@ -0,0 +1,82 @@
+import javax.swing.*;
+import java.util.BitSet;
+
+/**
+ * Collects spots changed by any thread and refreshes them on the EDT at most
+ * once per frame, so a burst of parks/removes costs one repaint pass instead
+ * of one per event.
+ */
+public class SpotRefreshCoalescer {
+    private static final int FRAME_MILLIS = 16;
+    
+    private final SpotView view;
+    private final int fullRefreshThreshold;
+    private final Timer timer;
+    private final BitSet dirty = new BitSet();
+    private int dirtyCount;
+    private boolean allDirty;
+    private boolean scheduled;
+    
+    public SpotRefreshCoalescer(SpotView view, int capacity) {
+        this.view = view;
+        // Past this many dirty spots one full repaint is cheaper than many small ones
+        this.fullRefreshThreshold = Math.max(64, capacity / 8);
+        this.timer = new Timer(FRAME_MILLIS, e -> flush());
+        this.timer.setRepeats(false);
+    }
+    
+    // Safe to call from any thread
+    public void markDirty(int spotIndex) {
+        boolean schedule;
+        synchronized (dirty) {
+            if (!dirty.get(spotIndex)) {
+                dirty.set(spotIndex);
+                dirtyCount++;
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        scheduleFlush(schedule);
+    }
+    
+    // One full refresh on the next flush, e.g. after a batch touched spots all over the lot
+    public void markAllDirty() {
+        boolean schedule;
+        synchronized (dirty) {
+            allDirty = true;
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        scheduleFlush(schedule);
+    }
+    
+    private void scheduleFlush(boolean schedule) {
+        if (schedule) {
+            // Timer.start must happen on the EDT; restart is never needed since one flush is pending
+            SwingUtilities.invokeLater(timer::start);
+        }
+    }
+    
+    private void flush() {
+        BitSet pending;
+        int pendingCount;
+        boolean pendingAll;
+        synchronized (dirty) {
+            pending = (BitSet) dirty.clone();
+            pendingCount = dirtyCount;
+            pendingAll = allDirty;
+            dirty.clear();
+            dirtyCount = 0;
+            allDirty = false;
+            scheduled = false;
+        }
+        
+        if (pendingAll || pendingCount > fullRefreshThreshold) {
+            view.refreshAll();
+            return;
+        }
+        for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+            view.refreshSpot(i);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Backing store for per-spot state, indexed by spot. The engine only writes a
+ * spot it holds through the allocator, so implementations need to be safe for
+ * concurrent readers but never see two writers on the same spot.
+ */
+public interface SpotStore {
+    int capacity();
+    
+    boolean isOccupied(int spotIndex);
+    
+    // Returns the parked vehicle, or null when the spot is free
+    Vehicle get(int spotIndex);
+    
+    // Stores a vehicle in a free spot; throws IllegalStateException if the spot is occupied
+    void put(int spotIndex, Vehicle vehicle);
+    
+    // Frees the spot and returns the vehicle that was there, or null if it was already free
+    Vehicle clear(int spotIndex);
+}
@@ -0,0 +1,6 @@
+// A view of the lot that can be told which spots changed
+public interface SpotView {
+    void refreshSpot(int spotIndex);
+    
+    void refreshAll();
+}
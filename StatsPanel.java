@@ -0,0 +1,122 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Live counters next to the spot view: occupancy, free spots per vehicle
+ * type, park/remove rates, revenue and p99 latencies. It polls the engine's
+ * metrics once a second while it is showing; rates are the change since the
+ * previous poll.
+ */
+public class StatsPanel extends JPanel {
+    private static final int REFRESH_MILLIS = 1000;
+    private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 13);
+    private static final Font VALUE_FONT = new Font("Arial", Font.BOLD, 13);
+    
+    private final ParkingEngine engine;
+    private final Timer timer;
+    private final JLabel occupiedValue;
+    private final JLabel[] freeValues = new JLabel[VehicleType.count()];
+    private final JLabel parkRateValue;
+    private final JLabel removeRateValue;
+    private final JLabel revenueValue;
+    private final JLabel parkLatencyValue;
+    private final JLabel removeLatencyValue;
+    
+    private long lastParks;
+    private long lastRemoves;
+    private long lastPollNanos;
+    
+    public StatsPanel(ParkingEngine engine, Color textColor) {
+        super(new GridBagLayout());
+        this.engine = engine;
+        
+        occupiedValue = addRow("Occupied", textColor);
+        for (int t = 0; t < freeValues.length; t++) {
+            freeValues[t] = addRow("Free for " + VehicleType.byOrdinal(t), textColor);
+        }
+        parkRateValue = addRow("Parks/s", textColor);
+        removeRateValue = addRow("Removes/s", textColor);
+        revenueValue = addRow("Revenue", textColor);
+        parkLatencyValue = addRow("Park p99", textColor);
+        removeLatencyValue = addRow("Remove p99", textColor);
+        
+        ParkingMetrics metrics = engine.getMetrics();
+        lastParks = metrics.getParks();
+        lastRemoves = metrics.getRemoves();
+        lastPollNanos = System.nanoTime();
+        timer = new Timer(REFRESH_MILLIS, e -> refresh());
+        refresh();
+    }
+    
+    // Only poll while the panel is on screen
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+    
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+    
+    private void refresh() {
+        ParkingMetrics metrics = engine.getMetrics();
+        long now = System.nanoTime();
+        long parks = metrics.getParks();
+        long removes = metrics.getRemoves();
+        double seconds = Math.max(1e-9, (now - lastPollNanos) / 1e9);
+        
+        occupiedValue.setText(engine.getParkedCount() + " / " + engine.getCapacity());
+        for (int t = 0; t < freeValues.length; t++) {
+            freeValues[t].setText(String.valueOf(engine.getFreeCount(VehicleType.byOrdinal(t))));
+        }
+        parkRateValue.setText(String.format("%.1f", (parks - lastParks) / seconds));
+        removeRateValue.setText(String.format("%.1f", (removes - lastRemoves) / seconds));
+        long revenue = metrics.getRevenueCents();
+        revenueValue.setText("$" + revenue / 100 + "." + String.format("%02d", revenue % 100));
+        parkLatencyValue.setText(formatLatency(metrics.getParkLatency()));
+        removeLatencyValue.setText(formatLatency(metrics.getRemoveLatency()));
+        
+        lastParks = parks;
+        lastRemoves = removes;
+        lastPollNanos = now;
+    }
+    
+    private JLabel addRow(String name, Color textColor) {
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridy = getComponentCount() / 2;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(2, 5, 2, 5);
+        
+        JLabel label = new JLabel(name + ":");
+        label.setFont(LABEL_FONT);
+        label.setForeground(textColor);
+        gbc.gridx = 0;
+        add(label, gbc);
+        
+        JLabel value = new JLabel("-");
+        value.setFont(VALUE_FONT);
+        value.setForeground(textColor);
+        gbc.gridx = 1;
+        gbc.anchor = GridBagConstraints.EAST;
+        add(value, gbc);
+        return value;
+    }
+    
+    // The bound of the histogram bucket holding p99, so at most about 6% above it
+    private static String formatLatency(LatencyHistogram histogram) {
+        long nanos = LatencyHistogram.quantileNanos(histogram.snapshot(), 0.99);
+        if (nanos == 0) {
+            return "-";
+        }
+        if (nanos == Long.MAX_VALUE) {
+            return "> 4 s";
+        }
+        if (nanos < 1000) {
+            return "< " + nanos + " ns";
+        }
+        return nanos < 1_000_000 ? "< " + nanos / 1000 + " us" : "< " + nanos / 1_000_000 + " ms";
+    }
+}
@@ -0,0 +1,207 @@
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Duration-based parking prices, in integer cents.
+ *
+ * Every started hour is charged: the first hour of a stay at the type's
+ * first-hour price, later hours at the clock rate for that hour of the week
+ * (night hours, then weekend hours, otherwise the day rate). Each 24 hours
+ * from entry is capped at the type's daily cap.
+ *
+ * The rules are compiled once into per-type tables indexed by hour of the
+ * week: prefix sums of the hourly rates over two weeks (so any window of up
+ * to a week is one subtraction), the capped price of a full day starting at
+ * each hour, and the price of a full week starting at each hour. A quote is
+ * therefore a handful of array reads whatever the length of the stay.
+ *
+ * The hour of the week is taken from the entry time in the tariff's zone; a
+ * daylight saving change during a stay shifts the clock rates by one hour.
+ */
+public final class Tariff {
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final int HOURS_PER_DAY = 24;
+    private static final int HOURS_PER_WEEK = 7 * HOURS_PER_DAY;
+    
+    private final ZoneRules zoneRules;
+    private final long fixedOffsetMillis; // Used when the zone has no daylight saving
+    private final long graceMillis;
+    private final long[] firstHourCents;
+    private final long[] dailyCapCents;
+    private final long[][] prefixCents; // [type][0..2 weeks]: cents for hours before index, counted from Monday 00:00
+    private final long[][] dayCents;    // [type][hour of week]: capped price of 24 hours starting there
+    private final long[][] weekCents;   // [type][hour of week]: price of 7 capped days starting there
+    private final boolean[] priced;
+    
+    // Hourly rates for one vehicle type
+    public static final class Rates {
+        final long firstHourCents;
+        final long dayHourCents;
+        final long nightHourCents;
+        final long weekendHourCents;
+        final long dailyCapCents;
+        
+        public Rates(long firstHourCents, long dayHourCents, long nightHourCents, long weekendHourCents, long dailyCapCents) {
+            if (firstHourCents < 0 || dayHourCents < 0 || nightHourCents < 0 || weekendHourCents < 0 || dailyCapCents < 0) {
+                throw new IllegalArgumentException("Rates cannot be negative");
+            }
+            this.firstHourCents = firstHourCents;
+            this.dayHourCents = dayHourCents;
+            this.nightHourCents = nightHourCents;
+            this.weekendHourCents = weekendHourCents;
+            this.dailyCapCents = dailyCapCents;
+        }
+    }
+    
+    public static class Builder {
+        private final ZoneId zone;
+        private final Map<VehicleType, Rates> rates = new EnumMap<>(VehicleType.class);
+        private int nightStartHour = 22;
+        private int nightEndHour = 6;
+        private int graceMinutes;
+        
+        public Builder(ZoneId zone) {
+            this.zone = zone;
+        }
+        
+        // Night runs from start to end hour and may wrap past midnight, e.g. 22 to 6
+        public Builder nightHours(int startHour, int endHour) {
+            if (startHour < 0 || startHour >= HOURS_PER_DAY || endHour < 0 || endHour >= HOURS_PER_DAY) {
+                throw new IllegalArgumentException("Night hours must be between 0 and 23");
+            }
+            nightStartHour = startHour;
+            nightEndHour = endHour;
+            return this;
+        }
+        
+        // Stays no longer than this are free
+        public Builder graceMinutes(int minutes) {
+            if (minutes < 0) {
+                throw new IllegalArgumentException("Grace period cannot be negative");
+            }
+            graceMinutes = minutes;
+            return this;
+        }
+        
+        public Builder rates(VehicleType vehicleType, Rates typeRates) {
+            rates.put(vehicleType, typeRates);
+            return this;
+        }
+        
+        public Tariff build() {
+            return new Tariff(this);
+        }
+    }
+    
+    private Tariff(Builder builder) {
+        zoneRules = builder.zone.getRules();
+        fixedOffsetMillis = zoneRules.isFixedOffset() ? zoneRules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L : 0;
+        graceMillis = builder.graceMinutes * 60_000L;
+        
+        int types = VehicleType.count();
+        priced = new boolean[types];
+        firstHourCents = new long[types];
+        dailyCapCents = new long[types];
+        prefixCents = new long[types][2 * HOURS_PER_WEEK + 1];
+        dayCents = new long[types][HOURS_PER_WEEK];
+        weekCents = new long[types][HOURS_PER_WEEK];
+        
+        for (Map.Entry<VehicleType, Rates> entry : builder.rates.entrySet()) {
+            int t = entry.getKey().ordinal();
+            Rates rates = entry.getValue();
+            priced[t] = true;
+            firstHourCents[t] = rates.firstHourCents;
+            dailyCapCents[t] = rates.dailyCapCents;
+            
+            long[] prefix = prefixCents[t];
+            for (int h = 0; h < 2 * HOURS_PER_WEEK; h++) {
+                prefix[h + 1] = prefix[h] + clockRate(rates, h % HOURS_PER_WEEK, builder.nightStartHour, builder.nightEndHour);
+            }
+            for (int h = 0; h < HOURS_PER_WEEK; h++) {
+                dayCents[t][h] = Math.min(rates.dailyCapCents, prefix[h + HOURS_PER_DAY] - prefix[h]);
+            }
+            for (int h = 0; h < HOURS_PER_WEEK; h++) {
+                long week = 0;
+                for (int day = 0; day < 7; day++) {
+                    week += dayCents[t][(h + day * HOURS_PER_DAY) % HOURS_PER_WEEK];
+                }
+                weekCents[t][h] = week;
+            }
+        }
+    }
+    
+    // The original flat fees become the first-hour prices; EV and disabled bays cost the same as a car
+    public static Tariff standard(ZoneId zone) {
+        Rates car = new Rates(500, 200, 100, 150, 2500);
+        return new Builder(zone)
+            .rates(VehicleType.CAR, car)
+            .rates(VehicleType.MOTORCYCLE, new Rates(300, 100, 50, 100, 1500))
+            .rates(VehicleType.TRUCK, new Rates(800, 400, 200, 300, 5000))
+            .rates(VehicleType.EV, car)
+            .rates(VehicleType.DISABLED, car)
+            .build();
+    }
+    
+    // Price of the first hour, i.e. the least a stay of this type costs; 0 for a type without rates
+    public long getFirstHourCents(VehicleType vehicleType) {
+        return firstHourCents[vehicleType.ordinal()];
+    }
+    
+    // Types without rates park free
+    public long quoteCents(VehicleType vehicleType, long entryMillis, long exitMillis) {
+        int typeIndex = vehicleType.ordinal();
+        if (!priced[typeIndex]) {
+            return 0;
+        }
+        long stayMillis = exitMillis - entryMillis;
+        if (graceMillis > 0 && stayMillis <= graceMillis) {
+            return 0;
+        }
+        long hours = Math.max(1, (stayMillis + HOUR_MILLIS - 1) / HOUR_MILLIS); // Every started hour, at least one
+        long[] prefix = prefixCents[typeIndex];
+        long cap = dailyCapCents[typeIndex];
+        int start = hourOfWeek(entryMillis);
+        
+        // First day: the first hour is replaced by the first-hour price
+        int firstDayHours = (int) Math.min(hours, HOURS_PER_DAY);
+        long cents = Math.min(cap, firstHourCents[typeIndex] + prefix[start + firstDayHours] - prefix[start + 1]);
+        long remaining = hours - firstDayHours;
+        if (remaining == 0) {
+            return cents;
+        }
+        
+        int hour = (start + HOURS_PER_DAY) % HOURS_PER_WEEK;
+        long fullDays = remaining / HOURS_PER_DAY;
+        cents += (fullDays / 7) * weekCents[typeIndex][hour];
+        for (long day = fullDays % 7; day > 0; day--) {
+            cents += dayCents[typeIndex][hour];
+            hour = (hour + HOURS_PER_DAY) % HOURS_PER_WEEK;
+        }
+        int lastHours = (int) (remaining % HOURS_PER_DAY);
+        return cents + Math.min(cap, prefix[hour + lastHours] - prefix[hour]);
+    }
+    
+    // Monday 00:00 local time is hour 0
+    private int hourOfWeek(long epochMillis) {
+        long offsetMillis = zoneRules.isFixedOffset() ? fixedOffsetMillis
+            : zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        long epochHour = Math.floorDiv(epochMillis + offsetMillis, HOUR_MILLIS);
+        long epochDay = Math.floorDiv(epochHour, HOURS_PER_DAY);
+        int dayOfWeek = Math.floorMod(epochDay + 3, 7); // 1970-01-01 was a Thursday
+        return dayOfWeek * HOURS_PER_DAY + Math.floorMod(epochHour, HOURS_PER_DAY);
+    }
+    
+    private static long clockRate(Rates rates, int hourOfWeek, int nightStartHour, int nightEndHour) {
+        int hourOfDay = hourOfWeek % HOURS_PER_DAY;
+        boolean night = nightStartHour <= nightEndHour
+            ? hourOfDay >= nightStartHour && hourOfDay < nightEndHour
+            : hourOfDay >= nightStartHour || hourOfDay < nightEndHour;
+        if (night) {
+            return rates.nightHourCents;
+        }
+        return hourOfWeek >= 5 * HOURS_PER_DAY ? rates.weekendHourCents : rates.dayHourCents;
+    }
+}
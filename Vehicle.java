@@ -0,0 +1,39 @@
+import java.util.Objects;
+
+public class Vehicle {
+    private final String number;
+    private final VehicleType type;
+    private final long amountCents; // First-hour price quoted at entry; the exit fee depends on the stay
+    private final long entryTime;
+    
+    public Vehicle(String number, VehicleType type, long amountCents, long entryTime) {
+        this.number = number;
+        this.type = type;
+        this.amountCents = amountCents;
+        this.entryTime = entryTime;
+    }
+    
+    public String getNumber() { return number; }
+    public VehicleType getType() { return type; }
+    public long getAmountCents() { return amountCents; }
+    public long getEntryTime() { return entryTime; }
+    
+    // Value equality: stores may hand out a fresh copy of the same parked vehicle on every read
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Vehicle)) {
+            return false;
+        }
+        Vehicle other = (Vehicle) o;
+        return number.equals(other.number) && type == other.type && amountCents == other.amountCents
+            && entryTime == other.entryTime;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(number, type, amountCents, entryTime);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Registry of the vehicle types the lot accepts. Per-type data (spot pools,
+ * tariff tables, free counts) is kept in arrays indexed by ordinal() rather
+ * than looked up by name.
+ *
+ * Each type lists the bays it fits in order of preference: its own bay kind
+ * first, then standard bays, which take any vehicle as every spot did before
+ * bays had kinds.
+ */
+public enum VehicleType {
+    CAR("Car", BayType.STANDARD),
+    MOTORCYCLE("Motorcycle", BayType.MOTORCYCLE, BayType.STANDARD),
+    TRUCK("Truck", BayType.TRUCK, BayType.STANDARD),
+    EV("EV", BayType.EV, BayType.STANDARD),
+    DISABLED("Disabled", BayType.DISABLED, BayType.STANDARD);
+    
+    private static final VehicleType[] VALUES = values();
+    
+    private final String displayName;
+    private final BayType[] bays;
+    
+    VehicleType(String displayName, BayType... bays) {
+        this.displayName = displayName;
+        this.bays = bays;
+    }
+    
+    public String getDisplayName() { return displayName; }
+    
+    // Bays this type may park in, most preferred first
+    BayType[] getBays() { return bays; }
+    
+    public boolean fits(BayType bayType) {
+        for (BayType bay : bays) {
+            if (bay == bayType) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public static int count() {
+        return VALUES.length;
+    }
+    
+    public static VehicleType byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+    
+    // Matches the display name, ignoring case (saved state and gate logs use it); null if no type has it
+    public static VehicleType fromName(String displayName) {
+        for (VehicleType type : VALUES) {
+            if (type.displayName.equalsIgnoreCase(displayName)) {
+                return type;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}